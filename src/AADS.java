@@ -1,11 +1,74 @@
 import java.util.*;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
 
 public class AADS {
 
-    // Global timing variables
+    // Global timing variables (--time-limit <ms>)
     private static long startTime;
-    private static final long TIME_LIMIT_MS = 115000; // 115 seconds
+    private static long timeLimitMs = 115000; // 115 seconds
+    // Exceeding the limit exits the process; watch and regress modes throw TimeLimitExceededException
+    // instead, so one slow instance does not stop the others
+    private static boolean exitOnTimeLimit = true;
+
+    // Covers every sample needs (--coverage-threshold)
+    private static int coverageThreshold = 3;
+
+    // Solver phases and their shares of the remaining time (--pipeline name[:share],..., see PHASES)
+    private static final String DEFAULT_PIPELINE = "exact:0.5,dominance,greedy,improve-coverage,swap,eliminate,two-opt,fleet";
+    private static String pipelineSpec = DEFAULT_PIPELINE;
+    private static long phaseDeadline = Long.MAX_VALUE;
+
+    // Checkpointing of the incumbent (disabled unless --checkpoint is given)
+    private static final long CHECKPOINT_INTERVAL_MS = 10000; // 10 seconds
+    private static String checkpointPath = null;
+    private static long lastCheckpointTime;
+
+    // Inner-loop kernels, chosen once at startup
+    private static final CoverageKernels kernels = selectKernels();
+
+    // Construction strategy name (--construction), see createStrategy
+    private static String constructionStrategy = "regret-3";
+
+    // Memory-map the covering pair store from this file instead of direct memory (--pair-store)
+    private static String pairStorePath = null;
+
+    // Number of UAVs (--fleet) and what to minimise over their tours (--fleet-objective makespan|sum)
+    private static int fleetSize = 1;
+    private static String fleetObjective = "makespan";
+
+    // Progress sampling (--progress <file|tcp://host:port>, --progress-interval <ms>)
+    private static final Progress progress = new Progress();
+    private static long progressIntervalMs = 1000;
+
+    // Geometric coverage model (--geometry validate|derive, --cone-degrees, --max-range)
+    private static String geometryMode = null;
+    private static double coneDegrees = 45.0;
+    private static double maxRange = Double.POSITIVE_INFINITY;
+
+    // Battery range: maximum length of a closed tour, per UAV in fleet mode (--max-tour-length)
+    private static double maxTourLength = Double.POSITIVE_INFINITY;
+
+    // Exact branch-and-bound for small instances (--exact auto|on|off, --exact-threshold <viewpoints>)
+    private static String exactMode = "auto";
+    private static int exactThreshold = 16;
+    private static final int EXACT_MAX_VIEWPOINTS = 20; // Held-Karp table over 2^19 subsets
+
+    // Intern parsed ids, compact the precision maps and drop the raw input text once compiled
+    // (--low-memory); heap usage per structure on stderr (--memory-report)
+    private static boolean lowMemory = false;
+    private static MemoryProbe memoryProbe = null;
 
     // ==================== Core Data Structures ====================
 
@@ -13,7 +76,9 @@ public class AADS {
         private final String id;
         private final double x, y, z;
         private final boolean isMandatory;
-        private final Map<String, Double> precisionMap; // angle_id -> precision
+        private Map<String, Double> precisionMap; // angle_id -> precision, null once compacted
+        private String[] compactAngles;           // compact form of the map (--low-memory)
+        private double[] compactPrecisions;
 
         public ViewPoint(String id, double x, double y, double z, boolean isMandatory) {
             this.id = id;
@@ -29,14 +94,47 @@ public class AADS {
         public double getY() { return y; }
         public double getZ() { return z; }
         public boolean isMandatory() { return isMandatory; }
-        public Map<String, Double> getPrecisionMap() { return precisionMap; }
+        // Read-only copy once compacted
+        public Map<String, Double> getPrecisionMap() {
+            if (precisionMap != null) return precisionMap;
+            Map<String, Double> map = new HashMap<>();
+            for (int i = 0; i < compactAngles.length; i++) {
+                map.put(compactAngles[i], compactPrecisions[i]);
+            }
+            return Collections.unmodifiableMap(map);
+        }
 
         public void addPrecision(String angleId, double precision) {
+            if (precisionMap == null) {
+                precisionMap = new HashMap<>(getPrecisionMap());
+                compactAngles = null;
+                compactPrecisions = null;
+            }
             precisionMap.put(angleId, precision);
         }
 
         public double getPrecision(String angleId) {
-            return precisionMap.getOrDefault(angleId, 0.0);
+            if (precisionMap != null) return precisionMap.getOrDefault(angleId, 0.0);
+            for (int i = 0; i < compactAngles.length; i++) {
+                if (compactAngles[i].equals(angleId)) return compactPrecisions[i];
+            }
+            return 0.0;
+        }
+
+        /**
+         * Replaces the boxed HashMap by two small arrays. The compiled instance keeps its own
+         * precision table, so after compiling the map is only read by warm start and metrics.
+         */
+        public void compactPrecision() {
+            if (precisionMap == null) return;
+            compactAngles = new String[precisionMap.size()];
+            compactPrecisions = new double[precisionMap.size()];
+            int i = 0;
+            for (Map.Entry<String, Double> entry : precisionMap.entrySet()) {
+                compactAngles[i] = entry.getKey();
+                compactPrecisions[i++] = entry.getValue();
+            }
+            precisionMap = null;
         }
 
         public double distanceTo(ViewPoint other) {
@@ -75,6 +173,9 @@ public class AADS {
         }
 
         public String getId() { return id; }
+        public double getX() { return x; }
+        public double getY() { return y; }
+        public double getZ() { return z; }
         public List<String[]> getCoveringPairs() { return coveringPairs; }
         public boolean isCovered() { return isCovered; }
         public void setCovered(boolean covered) { this.isCovered = covered; }
@@ -82,6 +183,14 @@ public class AADS {
         public void addCoveringPair(String viewpointId, String angleId) {
             coveringPairs.add(new String[]{viewpointId, angleId});
         }
+
+        // Called once the pairs are compiled into a CoveringPairStore
+        public void releaseCoveringPairs() {
+            coveringPairs.clear();
+            if (coveringPairs instanceof ArrayList) {
+                ((ArrayList<String[]>) coveringPairs).trimToSize();
+            }
+        }
     }
 
     static class Solution {
@@ -90,6 +199,12 @@ public class AADS {
         private double totalDistance;
         private double totalPrecision;
         private double objectiveValue;
+        private List<List<ViewPoint>> fleetTours; // fleet mode only, each starts at the mandatory viewpoint
+        private double makespan;
+        private boolean toursValid;     // set by validateSolution: start, connectivity and range
+        private int satisfiedSamples;   // set by validateSolution: samples at the coverage threshold
+        private boolean provenOptimal;  // set by the exact solver
+        private int coverableSamples = -1; // upper bound from collision graph analysis, -1 if not analysed
 
         public Solution() {
             this.tour = new ArrayList<>();
@@ -104,6 +219,12 @@ public class AADS {
         public double getTotalDistance() { return totalDistance; }
         public double getTotalPrecision() { return totalPrecision; }
         public double getObjectiveValue() { return objectiveValue; }
+        public List<List<ViewPoint>> getFleetTours() { return fleetTours; }
+        public double getMakespan() { return makespan; }
+        public boolean isToursValid() { return toursValid; }
+        public int getSatisfiedSamples() { return satisfiedSamples; }
+        public boolean isProvenOptimal() { return provenOptimal; }
+        public int getCoverableSamples() { return coverableSamples; }
 
         public void addViewPoint(ViewPoint vp) {
             tour.add(vp);
@@ -117,332 +238,4140 @@ public class AADS {
         public void setTotalDistance(double d) { this.totalDistance = d; }
         public void setTotalPrecision(double p) { this.totalPrecision = p; }
         public void setObjectiveValue(double v) { this.objectiveValue = v; }
+        public void setFleetTours(List<List<ViewPoint>> tours) { this.fleetTours = tours; }
+        public void setMakespan(double m) { this.makespan = m; }
+        public void setProvenOptimal(boolean provenOptimal) { this.provenOptimal = provenOptimal; }
+        public void setCoverableSamples(int coverableSamples) { this.coverableSamples = coverableSamples; }
+        public void setValidation(boolean toursValid, int satisfiedSamples) {
+            this.toursValid = toursValid;
+            this.satisfiedSamples = satisfiedSamples;
+        }
     }
 
-    // ==================== JSON Parsing ====================
+    /**
+     * A change to the instance since a solution was computed: edges of the collision matrix
+     * that became blocked or open, viewpoints that are no longer available and new sample points.
+     */
+    static class ChangeSet {
+        private final List<String[]> blockedEdges;  // [from_id, to_id]
+        private final List<String[]> openedEdges;   // [from_id, to_id]
+        private final Set<String> disabledViewPoints;
+        private final List<SamplePoint> addedSamples;
+
+        public ChangeSet() {
+            this.blockedEdges = new ArrayList<>();
+            this.openedEdges = new ArrayList<>();
+            this.disabledViewPoints = new HashSet<>();
+            this.addedSamples = new ArrayList<>();
+        }
 
-    private static Map<String, ViewPoint> parseViewPoints(String input) {
-        Map<String, ViewPoint> viewPoints = new HashMap<>();
-        try {
-            int vpStart = input.indexOf("\"viewpoints\"");
-            if (vpStart == -1) return viewPoints;
+        public List<String[]> getBlockedEdges() { return blockedEdges; }
+        public List<String[]> getOpenedEdges() { return openedEdges; }
+        public Set<String> getDisabledViewPoints() { return disabledViewPoints; }
+        public List<SamplePoint> getAddedSamples() { return addedSamples; }
 
-            int arrayStart = input.indexOf("[", vpStart);
-            int arrayEnd = findMatchingBracket(input, arrayStart);
-            String vpArray = input.substring(arrayStart, arrayEnd + 1);
+        public void blockEdge(String fromId, String toId) { blockedEdges.add(new String[]{fromId, toId}); }
+        public void openEdge(String fromId, String toId) { openedEdges.add(new String[]{fromId, toId}); }
+        public void disableViewPoint(String id) { disabledViewPoints.add(id); }
+        public void addSample(SamplePoint sp) { addedSamples.add(sp); }
 
-            int pos = 1;
-            while (pos < vpArray.length()) {
-                int objStart = vpArray.indexOf("{", pos);
-                if (objStart == -1) break;
+        public int size() {
+            return blockedEdges.size() + openedEdges.size() + disabledViewPoints.size() + addedSamples.size();
+        }
+    }
 
-                int objEnd = findMatchingBrace(vpArray, objStart);
-                String vpObj = vpArray.substring(objStart, objEnd + 1);
+    /**
+     * Outcome of replanSolution: the updated solution plus what changed relative to the input solution.
+     */
+    static class ReplanResult {
+        private final Solution solution;
+        private final List<String> removedViewPoints;
+        private final List<String> addedViewPoints;
+        private final Map<String, Set<String>> addedAngles; // viewpoint_id -> angle_ids
+
+        public ReplanResult(Solution solution) {
+            this.solution = solution;
+            this.removedViewPoints = new ArrayList<>();
+            this.addedViewPoints = new ArrayList<>();
+            this.addedAngles = new LinkedHashMap<>();
+        }
 
-                // Parse viewpoint
-                String id = extractStringValue(vpObj, "\"id\"");
-                boolean mandatory = vpObj.contains("\"is_mandatory\": true");
+        public Solution getSolution() { return solution; }
+        public List<String> getRemovedViewPoints() { return removedViewPoints; }
+        public List<String> getAddedViewPoints() { return addedViewPoints; }
+        public Map<String, Set<String>> getAddedAngles() { return addedAngles; }
 
-                // Parse coordinates
-                int coordStart = vpObj.indexOf("\"coordinates\"");
-                int coordObjStart = vpObj.indexOf("{", coordStart);
-                int coordObjEnd = findMatchingBrace(vpObj, coordObjStart);
-                String coordObj = vpObj.substring(coordObjStart, coordObjEnd + 1);
+        public void addAngle(String vpId, String angleId) {
+            addedAngles.computeIfAbsent(vpId, k -> new LinkedHashSet<>()).add(angleId);
+        }
+    }
 
-                double x = extractDouble(coordObj, "\"x\"");
-                double y = extractDouble(coordObj, "\"y\"");
-                double z = extractDouble(coordObj, "\"z\"");
+    // ==================== Compiled Instance ====================
 
-                ViewPoint vp = new ViewPoint(id, x, y, z, mandatory);
+    /**
+     * Covering pairs packed into ints and kept off-heap, in two directions:
+     * sample -> (viewpoint, angle) and viewpoint -> (sample, angle).
+     * Each entry is (id << ANGLE_BITS) | angle, with dense ids from CompiledInstance.
+     *
+     * Access is by index, so iterating the pairs of a sample or viewpoint allocates nothing:
+     *   for (int k = store.sampleStart(s); k < store.sampleEnd(s); k++) { int p = store.samplePair(k); ... }
+     */
+    static class CoveringPairStore {
+        static final int ANGLE_BITS = 8;
+        static final int ANGLE_MASK = (1 << ANGLE_BITS) - 1;
+        // Sample and viewpoint ids share the int with the angle, so they must stay below this
+        static final int MAX_IDS = 1 << (Integer.SIZE - ANGLE_BITS);
+
+        // sample -> [offset, next offset) in samplePairs; entries past numSamples are spare capacity
+        private int[] sampleOffsets;
+        private int numSamples;
+        // viewpoint -> [vpOffsets[v], vpEnds[v]) in vpPairs; up to vpOffsets[v + 1] is spare capacity
+        private final int[] vpOffsets;
+        private final int[] vpEnds;
+        private final IntBuffer samplePairs;
+        private final IntBuffer vpPairs;
+        private final Path mapFile; // file the buffers are mapped from, null for direct buffers
+
+        private CoveringPairStore(int[] sampleOffsets, int numSamples, int[] vpOffsets, int[] vpEnds,
+                                  IntBuffer samplePairs, IntBuffer vpPairs, Path mapFile) {
+            this.sampleOffsets = sampleOffsets;
+            this.numSamples = numSamples;
+            this.vpOffsets = vpOffsets;
+            this.vpEnds = vpEnds;
+            this.samplePairs = samplePairs;
+            this.vpPairs = vpPairs;
+            this.mapFile = mapFile;
+        }
 
-                // Parse precision map
-                int precStart = vpObj.indexOf("\"precision\"");
-                if (precStart != -1) {
-                    int precObjStart = vpObj.indexOf("{", precStart);
-                    int precObjEnd = findMatchingBrace(vpObj, precObjStart);
-                    String precObj = vpObj.substring(precObjStart, precObjEnd + 1);
+        static int pack(int id, int angle) { return (id << ANGLE_BITS) | angle; }
+        static int id(int packed) { return packed >>> ANGLE_BITS; }
+        static int angle(int packed) { return packed & ANGLE_MASK; }
+
+        public int numSamples() { return numSamples; }
+        public int numPairs() { return sampleOffsets[numSamples]; }
+
+        public int sampleStart(int s) { return sampleOffsets[s]; }
+        public int sampleEnd(int s) { return sampleOffsets[s + 1]; }
+        public int samplePair(int k) { return samplePairs.get(k); } // (viewpoint, angle)
+
+        public int vpStart(int v) { return vpOffsets[v]; }
+        public int vpEnd(int v) { return vpEnds[v]; }
+        public int vpPair(int k) { return vpPairs.get(k); } // (sample, angle)
+
+        public long offHeapBytes() { return (long) Integer.BYTES * (samplePairs.capacity() + vpPairs.capacity()); }
+
+        /**
+         * Packs the covering pairs of the samples (in list order). Pairs that refer to unknown
+         * viewpoints or angles are dropped. If mapFile is given the buffers are memory-mapped
+         * from that file, otherwise they are allocated as direct buffers. Outside low-memory mode
+         * the store gets spare capacity, so samples added by a change set go in without a copy.
+         */
+        static CoveringPairStore build(List<SamplePoint> samples,
+                                       Map<String, Integer> vpIndex,
+                                       Map<String, Integer> angleIndex,
+                                       Path mapFile) throws IOException {
+            return copyWith(null, samples, vpIndex, angleIndex, !lowMemory, mapFile);
+        }
 
-                    // Extract all angle:precision pairs
-                    // Format: { "a1": -123.45, "a2": -678.90 }
-                    String[] parts = precObj.split(",");
-                    for (String part : parts) {
-                        if (part.contains(":")) {
-                            // Extract angle ID between quotes
-                            int firstQuote = part.indexOf("\"");
-                            if (firstQuote >= 0) {
-                                int secondQuote = part.indexOf("\"", firstQuote + 1);
-                                if (secondQuote > firstQuote) {
-                                    String angleId = part.substring(firstQuote + 1, secondQuote);
-                                    if (angleId.startsWith("a")) {
-                                        double precision = extractDoubleFromPair(part);
-                                        vp.addPrecision(angleId, precision);
-                                    }
-                                }
-                            }
-                        }
-                    }
+        /**
+         * Appends the added samples to base, which get the dense ids base.numSamples(),
+         * base.numSamples() + 1, ... Written into base's spare capacity when it has room, so the
+         * work is proportional to the added pairs; otherwise a copy with spare capacity for
+         * further appends is built (mapped from mapFile if given). Returns the store to use.
+         */
+        static CoveringPairStore append(CoveringPairStore base,
+                                        List<SamplePoint> added,
+                                        Map<String, Integer> vpIndex,
+                                        Map<String, Integer> angleIndex,
+                                        Path mapFile) throws IOException {
+            if (base.appendInPlace(added, vpIndex, angleIndex)) return base;
+            return copyWith(base, added, vpIndex, angleIndex, true, mapFile);
+        }
+
+        // Writes the added samples into the spare capacity, or returns false (and changes nothing)
+        private boolean appendInPlace(List<SamplePoint> added,
+                                      Map<String, Integer> vpIndex,
+                                      Map<String, Integer> angleIndex) {
+            if (numSamples + added.size() + 1 > sampleOffsets.length
+                    || numSamples + added.size() > MAX_IDS) return false;
+            int addedPairs = 0;
+            Map<Integer, Integer> perViewPoint = new HashMap<>();
+            for (SamplePoint sp : added) {
+                for (String[] pair : sp.getCoveringPairs()) {
+                    Integer v = vpIndex.get(pair[0]);
+                    if (v == null || !angleIndex.containsKey(pair[1])) continue;
+                    perViewPoint.merge(v, 1, Integer::sum);
+                    addedPairs++;
                 }
+            }
+            if (numPairs() + addedPairs > samplePairs.capacity()) return false;
+            for (Map.Entry<Integer, Integer> entry : perViewPoint.entrySet()) {
+                int v = entry.getKey();
+                if (vpEnds[v] + entry.getValue() > vpOffsets[v + 1]) return false;
+            }
 
-                viewPoints.put(id, vp);
-                pos = objEnd + 1;
+            // New sample ids are the largest, so the viewpoint lists stay in sample order
+            int k = numPairs();
+            for (SamplePoint sp : added) {
+                for (String[] pair : sp.getCoveringPairs()) {
+                    Integer v = vpIndex.get(pair[0]);
+                    Integer a = angleIndex.get(pair[1]);
+                    if (v == null || a == null) continue;
+                    samplePairs.put(k++, pack(v, a));
+                    vpPairs.put(vpEnds[v]++, pack(numSamples, a));
+                }
+                sampleOffsets[++numSamples] = k;
             }
-        } catch (Exception e) {
-            System.err.println("Error parsing viewpoints: " + e.getMessage());
-            e.printStackTrace(System.err);
+            return true;
         }
-        System.err.println("Parsed " + viewPoints.size() + " viewpoints");
-        return viewPoints;
-    }
 
-    private static Map<String, SamplePoint> parseSamplePoints(String json) {
-        Map<String, SamplePoint> samplePoints = new HashMap<>();
-        try {
-            int spStart = json.indexOf("\"sample_points\"");
-            if (spStart == -1) return samplePoints;
+        /**
+         * A new store with the pairs of base (may be null) followed by the added samples. With
+         * spare set, every list gets room to grow by about an eighth before the next copy.
+         */
+        private static CoveringPairStore copyWith(CoveringPairStore base,
+                                                  List<SamplePoint> added,
+                                                  Map<String, Integer> vpIndex,
+                                                  Map<String, Integer> angleIndex,
+                                                  boolean spare,
+                                                  Path mapFile) throws IOException {
+            int baseSamples = (base != null) ? base.numSamples() : 0;
+            int basePairs = (base != null) ? base.numPairs() : 0;
+            int numSamples = baseSamples + added.size();
+            int numViewPoints = vpIndex.size();
+            if (numSamples > MAX_IDS || numViewPoints > MAX_IDS) {
+                throw new IllegalStateException("Too many samples (" + numSamples + ") or viewpoints (" +
+                        numViewPoints + ") for the pair store, at most " + MAX_IDS + " of each");
+            }
 
-            int arrayStart = json.indexOf("[", spStart);
-            int arrayEnd = findMatchingBracket(json, arrayStart);
-            String spSection = json.substring(arrayStart, arrayEnd + 1);
+            // Pass 1: count pairs per sample and per viewpoint
+            int[] sampleOffsets = new int[(spare ? numSamples + numSamples / 8 + 16 : numSamples) + 1];
+            int[] counts = new int[numViewPoints];
+            if (base != null) {
+                System.arraycopy(base.sampleOffsets, 0, sampleOffsets, 0, baseSamples + 1);
+                for (int v = 0; v < numViewPoints; v++) {
+                    counts[v] = base.vpEnd(v) - base.vpStart(v);
+                }
+            }
+            for (int i = 0; i < added.size(); i++) {
+                int count = 0;
+                for (String[] pair : added.get(i).getCoveringPairs()) {
+                    Integer v = vpIndex.get(pair[0]);
+                    if (v == null || !angleIndex.containsKey(pair[1])) continue;
+                    counts[v]++;
+                    count++;
+                }
+                sampleOffsets[baseSamples + i + 1] = sampleOffsets[baseSamples + i] + count;
+            }
+            int[] vpOffsets = new int[numViewPoints + 1];
+            for (int v = 0; v < numViewPoints; v++) {
+                vpOffsets[v + 1] = vpOffsets[v] + counts[v] + (spare ? counts[v] / 8 + 4 : 0);
+            }
+            int numPairs = sampleOffsets[numSamples];
+
+            IntBuffer[] buffers = allocate(spare ? numPairs + numPairs / 8 + 64 : numPairs,
+                    vpOffsets[numViewPoints], mapFile);
+            IntBuffer samplePairs = buffers[0];
+            IntBuffer vpPairs = buffers[1];
+
+            // Pass 2: copy the base, then fill the added samples in both directions
+            int[] vpEnds = Arrays.copyOf(vpOffsets, numViewPoints);
+            if (base != null) {
+                for (int k = 0; k < basePairs; k++) {
+                    samplePairs.put(k, base.samplePair(k));
+                }
+                for (int v = 0; v < numViewPoints; v++) {
+                    for (int k = base.vpStart(v); k < base.vpEnd(v); k++) {
+                        vpPairs.put(vpEnds[v]++, base.vpPair(k));
+                    }
+                }
+            }
+            int k = basePairs;
+            for (int i = 0; i < added.size(); i++) {
+                for (String[] pair : added.get(i).getCoveringPairs()) {
+                    Integer v = vpIndex.get(pair[0]);
+                    Integer a = angleIndex.get(pair[1]);
+                    if (v == null || a == null) continue;
+                    samplePairs.put(k++, pack(v, a));
+                    vpPairs.put(vpEnds[v]++, pack(baseSamples + i, a));
+                }
+            }
+            return new CoveringPairStore(sampleOffsets, numSamples, vpOffsets, vpEnds, samplePairs, vpPairs, mapFile);
+        }
 
-            int pos = 1;
-            while (pos < spSection.length()) {
-                int objStart = spSection.indexOf("{", pos);
-                if (objStart == -1) break;
+        /**
+         * Returns a new store without the (viewpoint, angle) pairs flagged in
+         * removed[v * numAngles + a]. Sample and viewpoint ids stay the same.
+         */
+        static CoveringPairStore without(CoveringPairStore base, boolean[] removed, int numAngles,
+                                         Path mapFile) throws IOException {
+            int numSamples = base.numSamples();
+            int numViewPoints = base.vpEnds.length;
+            int[] sampleOffsets = new int[numSamples + 1];
+            int[] vpOffsets = new int[numViewPoints + 1];
+            for (int s = 0; s < numSamples; s++) {
+                int count = 0;
+                for (int k = base.sampleStart(s); k < base.sampleEnd(s); k++) {
+                    int packed = base.samplePair(k);
+                    if (!removed[id(packed) * numAngles + angle(packed)]) count++;
+                }
+                sampleOffsets[s + 1] = sampleOffsets[s] + count;
+            }
+            for (int v = 0; v < numViewPoints; v++) {
+                int count = 0;
+                for (int k = base.vpStart(v); k < base.vpEnd(v); k++) {
+                    if (!removed[v * numAngles + angle(base.vpPair(k))]) count++;
+                }
+                vpOffsets[v + 1] = vpOffsets[v] + count;
+            }
+            int numPairs = sampleOffsets[numSamples];
 
-                int objEnd = findMatchingBrace(spSection, objStart);
-                String spObj = spSection.substring(objStart, objEnd + 1);
+            IntBuffer[] buffers = allocate(numPairs, numPairs, mapFile);
+            IntBuffer samplePairs = buffers[0];
+            IntBuffer vpPairs = buffers[1];
 
-                String id = extractStringValue(spObj, "\"id\"");
+            int n = 0;
+            for (int k = 0; k < base.numPairs(); k++) {
+                int packed = base.samplePair(k);
+                if (!removed[id(packed) * numAngles + angle(packed)]) samplePairs.put(n++, packed);
+            }
+            n = 0;
+            for (int v = 0; v < numViewPoints; v++) {
+                for (int k = base.vpStart(v); k < base.vpEnd(v); k++) {
+                    int packed = base.vpPair(k);
+                    if (!removed[v * numAngles + angle(packed)]) vpPairs.put(n++, packed);
+                }
+            }
+            return new CoveringPairStore(sampleOffsets, numSamples, vpOffsets,
+                    Arrays.copyOfRange(vpOffsets, 1, numViewPoints + 1), samplePairs, vpPairs, mapFile);
+        }
 
-                // Parse coordinates
-                int coordStart = spObj.indexOf("\"coordinates\"");
-                int coordObjStart = spObj.indexOf("{", coordStart);
-                int coordObjEnd = findMatchingBrace(spObj, coordObjStart);
-                String coordObj = spObj.substring(coordObjStart, coordObjEnd + 1);
+        /**
+         * Two int buffers of sampleCapacity and vpCapacity entries (sample order, viewpoint order),
+         * memory-mapped from mapFile if given, otherwise direct.
+         */
+        private static IntBuffer[] allocate(int sampleCapacity, int vpCapacity, Path mapFile) throws IOException {
+            long sampleBytes = (long) sampleCapacity * Integer.BYTES;
+            long vpBytes = (long) vpCapacity * Integer.BYTES;
+            // Each buffer is indexed by int and addressed from a single int-sized region
+            if (Math.max(sampleBytes, vpBytes) > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Pair store too large: " + sampleCapacity + " covering pairs need " +
+                        Math.max(sampleBytes, vpBytes) + " bytes per direction, at most " + Integer.MAX_VALUE);
+            }
+            if (mapFile != null) {
+                try (FileChannel channel = FileChannel.open(mapFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    return new IntBuffer[] {
+                            channel.map(FileChannel.MapMode.READ_WRITE, 0, sampleBytes)
+                                    .order(ByteOrder.nativeOrder()).asIntBuffer(),
+                            channel.map(FileChannel.MapMode.READ_WRITE, sampleBytes, vpBytes)
+                                    .order(ByteOrder.nativeOrder()).asIntBuffer()
+                    };
+                }
+            }
+            return new IntBuffer[] {
+                    ByteBuffer.allocateDirect((int) sampleBytes).order(ByteOrder.nativeOrder()).asIntBuffer(),
+                    ByteBuffer.allocateDirect((int) vpBytes).order(ByteOrder.nativeOrder()).asIntBuffer()
+            };
+        }
+    }
 
-                double x = extractDouble(coordObj, "\"x\"");
-                double y = extractDouble(coordObj, "\"y\"");
-                double z = extractDouble(coordObj, "\"z\"");
+    /**
+     * The collision matrix as one bitset row per viewpoint: bit j of row i is set iff the input
+     * has 1 at [i][j], i.e. the flight from i to j is allowed. One bit per entry instead of an
+     * int keeps the matrix of a 50k viewpoint site at about 300 MB.
+     */
+    static class CollisionMatrix {
+        private final long[][] rows;
+        private final int columns;
 
-                SamplePoint sp = new SamplePoint(id, x, y, z);
+        CollisionMatrix(int size, int columns) {
+            this.rows = new long[size][(columns + 63) >>> 6];
+            this.columns = columns;
+        }
 
-                // Parse covering pairs
-                int cpStart = spObj.indexOf("\"covering_pairs\"");
-                if (cpStart != -1) {
-                    int cpArrayStart = spObj.indexOf("[", cpStart);
-                    int cpArrayEnd = findMatchingBracket(spObj, cpArrayStart);
-                    String cpArray = spObj.substring(cpArrayStart, cpArrayEnd + 1);
+        public int size() { return rows.length; }
+        public int columns() { return columns; }
 
-                    int cpPos = 1;
-                    while (cpPos < cpArray.length()) {
-                        int pairStart = cpArray.indexOf("[", cpPos);
-                        if (pairStart == -1) break;
+        public boolean allowed(int from, int to) {
+            return (rows[from][to >>> 6] & (1L << to)) != 0;
+        }
 
-                        int pairEnd = cpArray.indexOf("]", pairStart);
-                        String pair = cpArray.substring(pairStart + 1, pairEnd);
+        public void set(int from, int to, boolean allowed) {
+            if (allowed) {
+                rows[from][to >>> 6] |= 1L << to;
+            } else {
+                rows[from][to >>> 6] &= ~(1L << to);
+            }
+        }
 
-                        String[] parts = pair.split(",");
-                        if (parts.length >= 2) {
-                            String vpId = parts[0].replace("\"", "").trim();
-                            String angleId = parts[1].replace("\"", "").trim();
-                            sp.addCoveringPair(vpId, angleId);
-                        }
+        // Live row bitset of from, for word-at-a-time graph algorithms
+        long[] row(int from) { return rows[from]; }
 
-                        cpPos = pairEnd + 1;
-                    }
-                }
+        // Heap footprint: the row arrays plus their headers
+        public long bytes() {
+            return 16L + 8L * rows.length + (long) rows.length * (16 + 8L * ((columns + 63) >>> 6));
+        }
+    }
 
-                samplePoints.put(id, sp);
-                pos = objEnd + 1;
+    /**
+     * Dense view of a parsed instance: viewpoints, samples and angles are numbered
+     * (viewpoints in collision matrix order) and the covering pairs live in a CoveringPairStore.
+     */
+    static class CompiledInstance {
+        private final ViewPoint[] viewPoints;
+        private final List<SamplePoint> samples;
+        private final String[] angleIds;
+        private final Map<String, Integer> vpIndex;
+        private final Map<String, Integer> sampleIndex;
+        private final Map<String, Integer> angleIndex;
+        private final CollisionMatrix collisionMatrix;
+        private final Path pairStoreFile;
+        private CoveringPairStore pairs;
+        // The store as compiled from the input (plus added samples), before dominance pruned it
+        private CoveringPairStore originalPairs;
+        private int storeGeneration = 0;
+
+        // precision[v * numAngles + a], 0 where the viewpoint has no such angle
+        private double[] precision;
+        private double minPrecision, maxPrecision;
+
+        // Distinct samples per viewpoint as plain arrays, streamed by the coverage kernels;
+        // null after the pair store changed until the next getter rebuilds them
+        private int[] vpSampleOffsets;
+        private int[] vpSamples;
+
+        // Viewpoints that cannot be part of a closed tour through the mandatory one,
+        // or whose covering pairs were all removed by dominance reduction
+        private boolean[] unusable;
+
+        private CompiledInstance(ViewPoint[] viewPoints, List<SamplePoint> samples, String[] angleIds,
+                                 Map<String, Integer> vpIndex, Map<String, Integer> angleIndex,
+                                 CollisionMatrix collisionMatrix, Path pairStoreFile) {
+            this.viewPoints = viewPoints;
+            this.samples = samples;
+            this.angleIds = angleIds;
+            this.vpIndex = vpIndex;
+            this.angleIndex = angleIndex;
+            this.collisionMatrix = collisionMatrix;
+            this.pairStoreFile = pairStoreFile;
+            this.sampleIndex = new HashMap<>();
+            for (int s = 0; s < samples.size(); s++) {
+                sampleIndex.put(samples.get(s).getId(), s);
             }
-        } catch (Exception e) {
-            System.err.println("Error parsing sample points: " + e.getMessage());
-            e.printStackTrace(System.err);
         }
-        System.err.println("Parsed " + samplePoints.size() + " sample points");
-        return samplePoints;
-    }
 
-    private static int[][] parseCollisionMatrix(String input) {
-        try {
-            int cmStart = input.indexOf("\"collision_matrix\"");
-            if (cmStart == -1) return new int[0][0];
+        public ViewPoint[] getViewPoints() { return viewPoints; }
+        public ViewPoint getViewPoint(int v) { return viewPoints[v]; }
+        public SamplePoint getSample(int s) { return samples.get(s); }
+        public String getAngleId(int a) { return angleIds[a]; }
+        public Map<String, Integer> getVpIndex() { return vpIndex; }
+        public Map<String, Integer> getSampleIndex() { return sampleIndex; }
+        public Map<String, Integer> getAngleIndex() { return angleIndex; }
+        public CollisionMatrix getCollisionMatrix() { return collisionMatrix; }
+        public CoveringPairStore getPairs() { return pairs; }
+        public CoveringPairStore getOriginalPairs() { return originalPairs; }
+        public double getPrecision(int v, int a) { return precision[v * angleIds.length + a]; }
+        public double getMinPrecision() { return minPrecision; }
+        public double getMaxPrecision() { return maxPrecision; }
+        public int[] getVpSampleOffsets() {
+            if (vpSampleOffsets == null) buildSampleLists();
+            return vpSampleOffsets;
+        }
 
-            int arrayStart = input.indexOf("[", cmStart);
-            int arrayEnd = findMatchingBracket(input, arrayStart);
-            String cmArray = input.substring(arrayStart + 1, arrayEnd);
+        public int[] getVpSamples() {
+            if (vpSamples == null) buildSampleLists();
+            return vpSamples;
+        }
+        public int numViewPoints() { return viewPoints.length; }
+        public int numSamples() { return samples.size(); }
+        public int numAngles() { return angleIds.length; }
 
-            // Count rows
-            List<int[]> rows = new ArrayList<>();
-            int pos = 0;
+        public int indexOf(ViewPoint vp) { return vpIndex.get(vp.getId()); }
 
-            while (pos < cmArray.length()) {
-                int rowStart = cmArray.indexOf("[", pos);
-                if (rowStart == -1) break;
+        public boolean isUsable(int v) { return unusable == null || !unusable[v]; }
+        void setUnusable(boolean[] unusable) { this.unusable = unusable; }
 
-                int rowEnd = cmArray.indexOf("]", rowStart);
-                String rowStr = cmArray.substring(rowStart + 1, rowEnd);
+        void markUnusable(int v) {
+            if (unusable == null) unusable = new boolean[viewPoints.length];
+            unusable[v] = true;
+        }
 
-                String[] values = rowStr.split(",");
-                int[] row = new int[values.length];
-                for (int i = 0; i < values.length; i++) {
-                    row[i] = Integer.parseInt(values[i].trim());
-                }
-                rows.add(row);
+        /**
+         * Compiles the parsed maps. The String[] covering pairs of the samples are released
+         * afterwards, the CoveringPairStore is the only copy from then on.
+         */
+        static CompiledInstance compile(Map<String, ViewPoint> viewPoints,
+                                        Map<String, SamplePoint> samplePoints,
+                                        CollisionMatrix collisionMatrix,
+                                        Path pairStoreFile) throws IOException {
+            ViewPoint[] vpArray = viewPoints.values().toArray(new ViewPoint[0]);
+            Map<String, Integer> vpIndex = new HashMap<>();
+            for (int v = 0; v < vpArray.length; v++) {
+                vpIndex.put(vpArray[v].getId(), v);
+            }
 
-                pos = rowEnd + 1;
+            // Angle ids sorted so that a1 < a2 < ... < a10
+            Set<String> angleSet = new HashSet<>();
+            for (ViewPoint vp : vpArray) {
+                angleSet.addAll(vp.getPrecisionMap().keySet());
+            }
+            for (SamplePoint sp : samplePoints.values()) {
+                for (String[] pair : sp.getCoveringPairs()) {
+                    angleSet.add(pair[1]);
+                }
+            }
+            if (angleSet.size() > CoveringPairStore.ANGLE_MASK + 1) {
+                throw new IllegalStateException("Too many angle ids for the pair store: " + angleSet.size());
+            }
+            String[] angleIds = angleSet.toArray(new String[0]);
+            Arrays.sort(angleIds, Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()));
+            Map<String, Integer> angleIndex = new HashMap<>();
+            for (int a = 0; a < angleIds.length; a++) {
+                angleIndex.put(angleIds[a], a);
             }
 
-            int[][] matrix = new int[rows.size()][];
-            for (int i = 0; i < rows.size(); i++) {
-                matrix[i] = rows.get(i);
+            CompiledInstance instance = new CompiledInstance(vpArray, new ArrayList<>(samplePoints.values()),
+                    angleIds, vpIndex, angleIndex, collisionMatrix, pairStoreFile);
+            instance.pairs = CoveringPairStore.build(instance.samples, vpIndex, angleIndex, pairStoreFile);
+            instance.originalPairs = instance.pairs;
+            for (SamplePoint sp : instance.samples) {
+                sp.releaseCoveringPairs();
             }
+            instance.buildPrecision();
 
-            System.err.println("Parsed collision matrix: " + matrix.length + "x" +
-                    (matrix.length > 0 ? matrix[0].length : 0));
-            return matrix;
-        } catch (Exception e) {
-            System.err.println("Error parsing collision matrix: " + e.getMessage());
-            return new int[0][0];
+            System.err.println("Compiled instance: " + vpArray.length + " viewpoints, " +
+                    instance.numSamples() + " samples, " + angleIds.length + " angles, " +
+                    instance.pairs.numPairs() + " covering pairs (" + instance.pairs.offHeapBytes() / 1024 +
+                    " KB off-heap" + (pairStoreFile != null ? ", mapped" : "") + ")");
+            return instance;
         }
-    }
 
-    // Helper methods
-    private static int findMatchingBracket(String str, int start) {
-        int count = 1;
-        for (int i = start + 1; i < str.length(); i++) {
-            if (str.charAt(i) == '[') count++;
-            else if (str.charAt(i) == ']') {
-                count--;
-                if (count == 0) return i;
+        /**
+         * Adds samples (with their String[] covering pairs still present) to the pair store.
+         * The store takes them into its spare capacity where it can, so a replan costs time in
+         * the added pairs; the sample lists are rebuilt lazily. Returns the dense id of the
+         * first added sample.
+         */
+        public int addSamples(List<SamplePoint> added) throws IOException {
+            int first = samples.size();
+            for (SamplePoint sp : added) {
+                sampleIndex.put(sp.getId(), samples.size());
+                samples.add(sp);
             }
+            // A copied store is mapped next to the one it replaces, which is released afterwards
+            CoveringPairStore oldPairs = pairs, oldOriginal = originalPairs;
+            pairs = CoveringPairStore.append(pairs, added, vpIndex, angleIndex, nextMapFile());
+            originalPairs = (oldOriginal != oldPairs)
+                    ? CoveringPairStore.append(originalPairs, added, vpIndex, angleIndex, nextMapFile())
+                    : pairs;
+            release(oldPairs);
+            release(oldOriginal);
+            for (SamplePoint sp : added) {
+                sp.releaseCoveringPairs();
+            }
+            vpSampleOffsets = null;
+            vpSamples = null;
+            return first;
         }
-        return str.length() - 1;
-    }
 
-    private static int findMatchingBrace(String str, int start) {
-        int count = 1;
-        for (int i = start + 1; i < str.length(); i++) {
-            if (str.charAt(i) == '{') count++;
-            else if (str.charAt(i) == '}') {
-                count--;
-                if (count == 0) return i;
-            }
+        /** Drops the (viewpoint, angle) pairs flagged in removed[v * numAngles() + a] from the pair store. */
+        public void removePairs(boolean[] removed) throws IOException {
+            CoveringPairStore oldPairs = pairs;
+            pairs = CoveringPairStore.without(pairs, removed, angleIds.length, nextMapFile());
+            release(oldPairs);
+            vpSampleOffsets = null;
+            vpSamples = null;
         }
-        return str.length() - 1;
-    }
 
-    private static String extractStringValue(String json, String key) {
-        try {
-            int keyPos = json.indexOf(key);
-            if (keyPos == -1) return "";
+        /**
+         * A fresh sibling of pairStoreFile for a rebuilt store, null when the store is not mapped.
+         * Siblings still in use when the JVM exits are deleted then.
+         */
+        private Path nextMapFile() {
+            if (pairStoreFile == null) return null;
+            Path file = pairStoreFile.resolveSibling(pairStoreFile.getFileName() + "." + (++storeGeneration));
+            file.toFile().deleteOnExit();
+            return file;
+        }
 
-            int colonPos = json.indexOf(":", keyPos);
-            int quoteStart = json.indexOf("\"", colonPos);
-            int quoteEnd = json.indexOf("\"", quoteStart + 1);
+        // Deletes the sibling file of a store that neither pairs nor originalPairs uses any more.
+        // The mapping stays valid until the buffers are collected; pairStoreFile itself is kept.
+        private void release(CoveringPairStore old) throws IOException {
+            if (old == null || old == pairs || old == originalPairs || old.mapFile == null
+                    || old.mapFile.equals(pairStoreFile)) return;
+            Files.deleteIfExists(old.mapFile);
+        }
 
-            return json.substring(quoteStart + 1, quoteEnd);
-        } catch (Exception e) {
-            return "";
+        private void buildPrecision() {
+            precision = new double[viewPoints.length * angleIds.length];
+            minPrecision = Double.MAX_VALUE;
+            maxPrecision = -Double.MAX_VALUE;
+            for (int v = 0; v < viewPoints.length; v++) {
+                for (Map.Entry<String, Double> entry : viewPoints[v].getPrecisionMap().entrySet()) {
+                    double p = entry.getValue();
+                    precision[v * angleIds.length + angleIndex.get(entry.getKey())] = p;
+                    minPrecision = Math.min(minPrecision, p);
+                    maxPrecision = Math.max(maxPrecision, p);
+                }
+            }
+            if (minPrecision > maxPrecision) {
+                minPrecision = maxPrecision = 0.0;
+            }
+        }
+
+        // Pairs of one viewpoint are sample-ordered, so duplicates are adjacent
+        private void buildSampleLists() {
+            int[] offsets = new int[viewPoints.length + 1];
+            int[] list = new int[pairs.numPairs()];
+            int n = 0;
+            for (int v = 0; v < viewPoints.length; v++) {
+                int last = -1;
+                for (int k = pairs.vpStart(v); k < pairs.vpEnd(v); k++) {
+                    int s = CoveringPairStore.id(pairs.vpPair(k));
+                    if (s != last) {
+                        list[n++] = s;
+                        last = s;
+                    }
+                }
+                offsets[v + 1] = n;
+            }
+            vpSampleOffsets = offsets;
+            vpSamples = Arrays.copyOf(list, n);
         }
     }
 
-    private static double extractDouble(String json, String key) {
-        try {
-            int keyPos = json.indexOf(key);
+    /**
+     * Primitive solution over dense ids: the tour as a doubly linked cycle (next/prev) starting at
+     * the mandatory viewpoint, an inTour bitset and one angle bitmask per viewpoint. Every change is
+     * recorded in an undo log, so local search can apply a move, evaluate it and roll it back with
+     * undo(mark) instead of copying. writeTo converts back to a Solution for metrics and output.
+     * Distances are taken as symmetric, so reversing a segment only changes its two end edges.
+     */
+    static class PackedSolution {
+        static final int MAX_ANGLES = Integer.SIZE;
+
+        private static final int OP_INSERT = 0;
+        private static final int OP_REMOVE = 1;
+        private static final int OP_ANGLES = 2;
+        private static final int OP_REVERSE = 3;
+
+        private final CompiledInstance instance;
+        private final int[] next;
+        private final int[] prev;
+        private final long[] inTour;
+        private final int[] angles;
+        private final int start;
+        private int size;
+        private double length;
+
+        // Undo log: (op, v, arg) per entry plus the tour length before it
+        private int[] log = new int[3 * 64];
+        private double[] logLength = new double[64];
+        private int logSize;
+
+        private PackedSolution(CompiledInstance instance, int start) {
+            int n = instance.numViewPoints();
+            this.instance = instance;
+            this.next = new int[n];
+            this.prev = new int[n];
+            this.inTour = new long[(n + 63) >>> 6];
+            this.angles = new int[n];
+            this.start = start;
+            next[start] = prev[start] = start;
+            inTour[start >>> 6] |= 1L << start;
+            size = 1;
+        }
+
+        /** Packs a solution whose tour starts at the mandatory viewpoint. */
+        static PackedSolution of(Solution solution, CompiledInstance instance) {
+            if (instance.numAngles() > MAX_ANGLES) {
+                throw new IllegalStateException("Too many angle ids for angle bitmasks: " + instance.numAngles());
+            }
+            List<ViewPoint> tour = solution.getTour();
+            PackedSolution packed = new PackedSolution(instance, instance.indexOf(tour.get(0)));
+            int last = packed.start;
+            for (int i = 0; i < tour.size(); i++) {
+                int v = instance.indexOf(tour.get(i));
+                if (i > 0) {
+                    packed.insertAfter(last, v);
+                    last = v;
+                }
+                for (String angleId : solution.getSelectedAngles().getOrDefault(tour.get(i), Collections.emptySet())) {
+                    Integer a = instance.getAngleIndex().get(angleId);
+                    if (a != null) packed.angles[v] |= 1 << a;
+                }
+            }
+            packed.commit();
+            return packed;
+        }
+
+        public int start() { return start; }
+        public int size() { return size; }
+        public double length() { return length; }
+        public int next(int v) { return next[v]; }
+        public int prev(int v) { return prev[v]; }
+        public int angles(int v) { return angles[v]; }
+        public boolean contains(int v) { return (inTour[v >>> 6] & (1L << v)) != 0; }
+
+        /** Sum of the precision of the selected angles of v. */
+        public double precision(int v) {
+            double sum = 0.0;
+            for (int mask = angles[v]; mask != 0; mask &= mask - 1) {
+                sum += instance.getPrecision(v, Integer.numberOfTrailingZeros(mask));
+            }
+            return sum;
+        }
+
+        public void insertAfter(int u, int v) {
+            record(OP_INSERT, v, u);
+            link(u, v);
+        }
+
+        public void remove(int v) {
+            record(OP_REMOVE, v, prev[v]);
+            unlink(v);
+        }
+
+        public void setAngles(int v, int mask) {
+            record(OP_ANGLES, v, angles[v]);
+            angles[v] = mask;
+        }
+
+        /** Reverses the path b -> ... -> c, which must not contain start, in O(path length). */
+        public void reverse(int b, int c) {
+            record(OP_REVERSE, b, c);
+            flip(b, c);
+        }
+
+        public int mark() { return logSize; }
+
+        /** Reverts every change made since mark, newest first. */
+        public void undo(int mark) {
+            while (logSize > mark) {
+                logSize--;
+                int op = log[3 * logSize];
+                int v = log[3 * logSize + 1];
+                int arg = log[3 * logSize + 2];
+                if (op == OP_INSERT) {
+                    unlink(v);
+                } else if (op == OP_REMOVE) {
+                    link(arg, v);
+                } else if (op == OP_REVERSE) {
+                    flip(arg, v);
+                } else {
+                    angles[v] = arg;
+                }
+                length = logLength[logSize];
+            }
+        }
+
+        /** Forgets the undo history. */
+        public void commit() { logSize = 0; }
+
+        /**
+         * Writes tour order and selected angles back into solution. Existing angle sets are
+         * updated in place rather than replaced.
+         */
+        public void writeTo(Solution solution) {
+            List<ViewPoint> tour = solution.getTour();
+            Map<ViewPoint, Set<String>> selected = solution.getSelectedAngles();
+            tour.clear();
+            int v = start;
+            do {
+                ViewPoint vp = instance.getViewPoint(v);
+                int mask = angles[v];
+                Set<String> angleIds = selected.computeIfAbsent(vp, k -> new HashSet<>());
+                angleIds.removeIf(id -> {
+                    Integer a = instance.getAngleIndex().get(id);
+                    return a == null || (mask & (1 << a)) == 0;
+                });
+                for (int bits = mask; bits != 0; bits &= bits - 1) {
+                    angleIds.add(instance.getAngleId(Integer.numberOfTrailingZeros(bits)));
+                }
+                tour.add(vp);
+                v = next[v];
+            } while (v != start);
+            selected.keySet().retainAll(new HashSet<>(tour));
+        }
+
+        private void link(int u, int v) {
+            int w = next[u];
+            next[v] = w;
+            prev[v] = u;
+            prev[w] = v;
+            next[u] = v;
+            inTour[v >>> 6] |= 1L << v;
+            size++;
+            length += distance(u, v) + distance(v, w) - distance(u, w);
+        }
+
+        private void unlink(int v) {
+            int p = prev[v];
+            int q = next[v];
+            next[p] = q;
+            prev[q] = p;
+            inTour[v >>> 6] &= ~(1L << v);
+            size--;
+            length -= distance(p, v) + distance(v, q) - distance(p, q);
+        }
+
+        // a -> b ... c -> d becomes a -> c ... b -> d by swapping next and prev along the path
+        private void flip(int b, int c) {
+            int a = prev[b];
+            int d = next[c];
+            length += distance(a, c) + distance(b, d) - distance(a, b) - distance(c, d);
+            for (int v = b; v != d; ) {
+                int w = next[v];
+                next[v] = prev[v];
+                prev[v] = w;
+                v = w;
+            }
+            next[a] = c;
+            prev[c] = a;
+            next[b] = d;
+            prev[d] = b;
+        }
+
+        private double distance(int u, int v) {
+            return instance.getViewPoint(u).distanceTo(instance.getViewPoint(v));
+        }
+
+        private void record(int op, int v, int arg) {
+            if (logSize == logLength.length) {
+                log = Arrays.copyOf(log, log.length * 2);
+                logLength = Arrays.copyOf(logLength, logLength.length * 2);
+            }
+            log[3 * logSize] = op;
+            log[3 * logSize + 1] = v;
+            log[3 * logSize + 2] = arg;
+            logLength[logSize] = length;
+            logSize++;
+        }
+    }
+
+    /**
+     * Coverage counters per dense sample id, plus the number of samples at the coverage threshold.
+     */
+    static class Coverage {
+        private int[] count;
+        private int satisfied;
+
+        public Coverage(int numSamples) {
+            this.count = new int[numSamples];
+            this.satisfied = 0;
+        }
+
+        public int get(int s) { return count[s]; }
+        public int[] counts() { return count; }
+        public int getSatisfied() { return satisfied; }
+        public int size() { return count.length; }
+
+        public void increment(int s) {
+            if (++count[s] == coverageThreshold) satisfied++;
+        }
+
+        public void decrement(int s) {
+            if (count[s]-- == coverageThreshold) satisfied--;
+        }
+
+        public void resize(int numSamples) {
+            count = Arrays.copyOf(count, numSamples);
+        }
+    }
+
+    // ==================== Geometric Coverage Model ====================
+
+    /**
+     * Geometric coverage: viewpoint v covers sample s with angle a if s is within maxRange of v
+     * and the ray v -> s lies within the cone of half-angle acos(minCosine) around the direction
+     * of a. Angle ids "aK" map to directions[K - 1]. A viewpoint offers the angles of its
+     * precision map, or every direction if the map is empty.
+     */
+    static class GeometryModel {
+        final double[] dirs; // x, y, z per direction
+        final int numDirs;
+        final double minCosine;
+        final double maxRange;
+
+        GeometryModel(double[][] directions, double coneDegrees, double maxRange) {
+            this.numDirs = directions.length;
+            this.dirs = new double[3 * numDirs];
+            for (int d = 0; d < numDirs; d++) {
+                System.arraycopy(directions[d], 0, dirs, 3 * d, 3);
+            }
+            this.minCosine = Math.cos(Math.toRadians(coneDegrees));
+            this.maxRange = maxRange;
+        }
+
+        // Direction index of an angle id, or -1 if it has none
+        int directionOf(String angleId) {
+            if (angleId.length() < 2 || angleId.charAt(0) != 'a') return -1;
+            try {
+                int d = Integer.parseInt(angleId.substring(1)) - 1;
+                return (d >= 0 && d < numDirs) ? d : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        // Bitmask of the directions viewpoint vp offers
+        long offeredDirections(ViewPoint vp) {
+            if (vp.getPrecisionMap().isEmpty()) return numDirs >= 64 ? -1L : (1L << numDirs) - 1;
+            long mask = 0;
+            for (String angleId : vp.getPrecisionMap().keySet()) {
+                int d = directionOf(angleId);
+                if (d >= 0 && d < 64) mask |= 1L << d;
+            }
+            return mask;
+        }
+    }
+
+    // Throws IllegalArgumentException for a --geometry mode other than validate or derive, or derive
+    // without a finite --max-range (the grid of deriveCoveringPairs needs a cell size)
+    private static void checkGeometryOptions(String mode, double range) {
+        if (mode == null || mode.equals("validate")) return;
+        if (!mode.equals("derive")) {
+            throw new IllegalArgumentException("Unknown geometry mode '" + mode + "', known: validate, derive");
+        }
+        if (!(range > 0) || Double.isInfinite(range)) {
+            throw new IllegalArgumentException("--geometry derive needs a finite positive --max-range, got " + range);
+        }
+    }
+
+    private static final int GEOMETRY_BLOCK = 4096; // samples per kernel call
+    private static final int GRID_BITS = 21;        // bits per axis of a packed grid cell key
+
+    /**
+     * Samples bucketed in a uniform grid of cubic cells at least maxRange wide, so every sample
+     * within maxRange of a point lies in the 3x3x3 cells around the point's cell. Cells are
+     * packed into long keys; keys[c] lists the occupied cells in order and samples
+     * [offsets[c], offsets[c + 1]) of members lie in cell c.
+     */
+    static class SampleGrid {
+        final double minX, minY, minZ, cellSize;
+        final long[] keys;
+        final int[] offsets;
+        final int[] members;
+
+        SampleGrid(double[] sx, double[] sy, double[] sz, double range) {
+            int n = sx.length;
+            double loX = Double.MAX_VALUE, loY = Double.MAX_VALUE, loZ = Double.MAX_VALUE;
+            double extent = 0;
+            for (int s = 0; s < n; s++) {
+                loX = Math.min(loX, sx[s]);
+                loY = Math.min(loY, sy[s]);
+                loZ = Math.min(loZ, sz[s]);
+            }
+            for (int s = 0; s < n; s++) {
+                extent = Math.max(extent, Math.max(sx[s] - loX, Math.max(sy[s] - loY, sz[s] - loZ)));
+            }
+            this.minX = loX;
+            this.minY = loY;
+            this.minZ = loZ;
+            // Wider cells than the range when the coordinates would not fit the key
+            this.cellSize = Math.max(range, extent / ((1 << GRID_BITS) - 2));
+
+            long[] sampleKeys = new long[n];
+            Integer[] order = new Integer[n];
+            for (int s = 0; s < n; s++) {
+                sampleKeys[s] = key(cell(sx[s], minX), cell(sy[s], minY), cell(sz[s], minZ));
+                order[s] = s;
+            }
+            // Stable, so the samples of a cell stay in sample order
+            Arrays.sort(order, Comparator.comparingLong(s -> sampleKeys[s]));
+
+            long[] cellKeys = new long[n];
+            int[] cellOffsets = new int[n + 1];
+            this.members = new int[n];
+            int cells = 0;
+            for (int i = 0; i < n; i++) {
+                members[i] = order[i];
+                long k = sampleKeys[order[i]];
+                if (cells == 0 || cellKeys[cells - 1] != k) {
+                    cellKeys[cells] = k;
+                    cellOffsets[cells++] = i;
+                }
+            }
+            cellOffsets[cells] = n;
+            this.keys = Arrays.copyOf(cellKeys, cells);
+            this.offsets = Arrays.copyOf(cellOffsets, cells + 1);
+        }
+
+        private int cell(double coordinate, double min) {
+            return (int) Math.floor((coordinate - min) / cellSize);
+        }
+
+        private static long key(int cx, int cy, int cz) {
+            return ((long) cx << (2 * GRID_BITS)) | ((long) cy << GRID_BITS) | cz;
+        }
+
+        /**
+         * Collects the samples in the cells around (x, y, z) into out (grown as needed),
+         * sorted by sample id. Returns the possibly reallocated array; count[0] is the size.
+         */
+        int[] near(double x, double y, double z, int[] out, int[] count) {
+            int cx = cell(x, minX), cy = cell(y, minY), cz = cell(z, minZ);
+            int n = 0;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        int ix = cx + dx, iy = cy + dy, iz = cz + dz;
+                        if (ix < 0 || iy < 0 || iz < 0 || ix >= (1 << GRID_BITS)
+                                || iy >= (1 << GRID_BITS) || iz >= (1 << GRID_BITS)) continue;
+                        int c = Arrays.binarySearch(keys, key(ix, iy, iz));
+                        if (c < 0) continue;
+                        int size = offsets[c + 1] - offsets[c];
+                        if (n + size > out.length) out = Arrays.copyOf(out, Math.max(2 * out.length, n + size));
+                        System.arraycopy(members, offsets[c], out, n, size);
+                        n += size;
+                    }
+                }
+            }
+            Arrays.sort(out, 0, n);
+            count[0] = n;
+            return out;
+        }
+    }
+
+    /**
+     * Covering pairs implied by the geometry, computed per viewpoint in parallel with the
+     * rayCosines kernel over blocks of the samples in the grid cells around the viewpoint.
+     * Result[v] holds packed (sample, direction) pairs in sample order.
+     */
+    private static int[][] deriveCoveringPairs(ViewPoint[] viewPoints, List<SamplePoint> samples,
+                                               GeometryModel model) {
+        int numSamples = samples.size();
+        double[] sx = new double[numSamples];
+        double[] sy = new double[numSamples];
+        double[] sz = new double[numSamples];
+        for (int s = 0; s < numSamples; s++) {
+            SamplePoint sp = samples.get(s);
+            sx[s] = sp.getX();
+            sy[s] = sp.getY();
+            sz[s] = sp.getZ();
+        }
+        SampleGrid grid = new SampleGrid(sx, sy, sz, model.maxRange);
+
+        int[][] result = new int[viewPoints.length][];
+        IntStream.range(0, viewPoints.length).parallel().forEach(v -> {
+            ViewPoint vp = viewPoints[v];
+            long offered = model.offeredDirections(vp);
+            int[] count = new int[1];
+            int[] candidates = grid.near(vp.getX(), vp.getY(), vp.getZ(), new int[64], count);
+            int numCandidates = count[0];
+            int block = Math.min(GEOMETRY_BLOCK, Math.max(1, numCandidates));
+            double[] px = new double[block], py = new double[block], pz = new double[block];
+            double[] dist = new double[block];
+            double[] scratch = new double[3 * block];
+            double[] cos = new double[model.numDirs * block];
+            int[] pairs = new int[16];
+            int found = 0;
+
+            for (int from = 0; from < numCandidates; from += block) {
+                int n = Math.min(block, numCandidates - from);
+                for (int i = 0; i < n; i++) {
+                    int s = candidates[from + i];
+                    px[i] = sx[s];
+                    py[i] = sy[s];
+                    pz[i] = sz[s];
+                }
+                kernels.rayCosines(px, py, pz, n, vp.getX(), vp.getY(), vp.getZ(),
+                        model.dirs, model.numDirs, dist, scratch, cos);
+                for (int i = 0; i < n; i++) {
+                    if (dist[i] > model.maxRange) continue;
+                    for (int d = 0; d < model.numDirs; d++) {
+                        if ((offered & (1L << d)) == 0 || cos[d * n + i] < model.minCosine) continue;
+                        if (found == pairs.length) pairs = Arrays.copyOf(pairs, found * 2);
+                        pairs[found++] = CoveringPairStore.pack(candidates[from + i], d);
+                    }
+                }
+            }
+            result[v] = Arrays.copyOf(pairs, found);
+        });
+        return result;
+    }
+
+    /**
+     * Compares the supplied covering pairs with the geometric model and reports agreement,
+     * plus the alignment of the supplied pairs to help calibrate the cone and range.
+     */
+    private static void validateGeometry(Map<String, ViewPoint> viewPoints, Map<String, SamplePoint> samplePoints,
+                                         GeometryModel model) {
+        ViewPoint[] vpArray = viewPoints.values().toArray(new ViewPoint[0]);
+        List<SamplePoint> samples = new ArrayList<>(samplePoints.values());
+        int[][] derived = deriveCoveringPairs(vpArray, samples, model);
+
+        Map<String, Integer> vpIndex = new HashMap<>();
+        for (int v = 0; v < vpArray.length; v++) vpIndex.put(vpArray[v].getId(), v);
+        Set<Long> derivedSet = new HashSet<>();
+        for (int v = 0; v < vpArray.length; v++) {
+            for (int packed : derived[v]) derivedSet.add(((long) v << 32) | packed);
+        }
+
+        int supplied = 0, matched = 0, noDirection = 0, missingPrecision = 0;
+        List<Double> cosines = new ArrayList<>();
+        List<Double> ranges = new ArrayList<>();
+        for (int s = 0; s < samples.size(); s++) {
+            SamplePoint sp = samples.get(s);
+            for (String[] pair : sp.getCoveringPairs()) {
+                Integer v = vpIndex.get(pair[0]);
+                if (v == null) continue;
+                supplied++;
+                ViewPoint vp = vpArray[v];
+                if (!vp.getPrecisionMap().containsKey(pair[1])) missingPrecision++;
+                int d = model.directionOf(pair[1]);
+                if (d < 0) {
+                    noDirection++;
+                    continue;
+                }
+                if (derivedSet.contains(((long) v << 32) | CoveringPairStore.pack(s, d))) matched++;
+
+                double dx = sp.getX() - vp.getX(), dy = sp.getY() - vp.getY(), dz = sp.getZ() - vp.getZ();
+                double range = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                ranges.add(range);
+                cosines.add(range > 0 ? (dx * model.dirs[3 * d] + dy * model.dirs[3 * d + 1]
+                        + dz * model.dirs[3 * d + 2]) / range : 0.0);
+            }
+        }
+        Collections.sort(cosines);
+        Collections.sort(ranges);
+
+        System.err.println("Geometry: " + derivedSet.size() + " derived pairs, " + supplied + " supplied, " +
+                matched + " in both (recall " + String.format("%.1f%%", supplied > 0 ? 100.0 * matched / supplied : 0.0) +
+                ", precision " + String.format("%.1f%%", derivedSet.isEmpty() ? 0.0 : 100.0 * matched / derivedSet.size()) +
+                "), " + noDirection + " without direction, " + missingPrecision + " without precision");
+        if (!cosines.isEmpty()) {
+            System.err.println("Geometry: supplied pairs cosine p10/p50/p90 " + quantiles(cosines) +
+                    ", range p10/p50/p90 " + quantiles(ranges));
+        }
+    }
+
+    private static String quantiles(List<Double> sorted) {
+        return String.format("%.3f/%.3f/%.3f", sorted.get(sorted.size() / 10), sorted.get(sorted.size() / 2),
+                sorted.get(sorted.size() * 9 / 10));
+    }
+
+    /**
+     * Replaces the covering pairs of every sample by the geometric ones, for instances
+     * generated without covering_pairs. Angles a viewpoint has no precision for get 0.
+     */
+    private static void applyDerivedPairs(Map<String, ViewPoint> viewPoints, Map<String, SamplePoint> samplePoints,
+                                          GeometryModel model) {
+        ViewPoint[] vpArray = viewPoints.values().toArray(new ViewPoint[0]);
+        List<SamplePoint> samples = new ArrayList<>(samplePoints.values());
+        int[][] derived = deriveCoveringPairs(vpArray, samples, model);
+
+        for (SamplePoint sp : samples) sp.getCoveringPairs().clear();
+        int total = 0;
+        for (int v = 0; v < vpArray.length; v++) {
+            for (int packed : derived[v]) {
+                String angleId = "a" + (CoveringPairStore.angle(packed) + 1);
+                samples.get(CoveringPairStore.id(packed)).addCoveringPair(vpArray[v].getId(), angleId);
+                if (!vpArray[v].getPrecisionMap().containsKey(angleId)) vpArray[v].addPrecision(angleId, 0.0);
+                total++;
+            }
+        }
+        System.err.println("Geometry: derived " + total + " covering pairs");
+    }
+
+    // ==================== Collision Graph Preprocessing ====================
+
+    /**
+     * Result of the collision graph analysis: SCC and degree statistics, the viewpoints that
+     * were pruned and the samples that can never reach the coverage threshold.
+     */
+    static class GraphAnalysis {
+        int numComponents;
+        int largestComponent;
+        int mandatoryComponent;
+        int minOutDegree, maxOutDegree, minInDegree, maxInDegree;
+        double meanDegree;
+        int prunedViewPoints;
+        final List<String> infeasibleSamples = new ArrayList<>();
+
+        boolean isFeasible() { return infeasibleSamples.isEmpty(); }
+    }
+
+    /**
+     * Analyses the directed collision graph (edge i -> j iff collisionMatrix.allowed(i, j)) on
+     * long[] bitsets. Viewpoints outside the strongly connected component of the mandatory
+     * viewpoint cannot be on a closed tour through it and are marked unusable in the instance.
+     * Samples with fewer covering pairs left than the coverage threshold are reported as infeasible.
+     */
+    private static GraphAnalysis analyseCollisionGraph(CompiledInstance instance) {
+        int n = instance.numViewPoints();
+        int words = (n + 63) >>> 6;
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        GraphAnalysis analysis = new GraphAnalysis();
+
+        // The matrix rows serve as the out-adjacency directly (self loops and columns >= n are
+        // ignored below), only the transposed in-adjacency is built
+        long[][] out = new long[n][];
+        long[][] in = new long[n][words];
+        int[] outDegree = new int[n];
+        int[] inDegree = new int[n];
+        long edges = 0;
+        for (int i = 0; i < n; i++) {
+            long[] row = collisionMatrix.row(i);
+            out[i] = row;
+            for (int w = 0; w < Math.min(words, row.length); w++) {
+                long bits = row[w];
+                if (w == i >>> 6) bits &= ~(1L << i);
+                if (w == words - 1 && (n & 63) != 0) bits &= (1L << n) - 1;
+                for (; bits != 0; bits &= bits - 1) {
+                    int j = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    in[j][i >>> 6] |= 1L << i;
+                    outDegree[i]++;
+                    inDegree[j]++;
+                    edges++;
+                }
+            }
+        }
+        analysis.minOutDegree = analysis.minInDegree = Integer.MAX_VALUE;
+        for (int v = 0; v < n; v++) {
+            analysis.minOutDegree = Math.min(analysis.minOutDegree, outDegree[v]);
+            analysis.maxOutDegree = Math.max(analysis.maxOutDegree, outDegree[v]);
+            analysis.minInDegree = Math.min(analysis.minInDegree, inDegree[v]);
+            analysis.maxInDegree = Math.max(analysis.maxInDegree, inDegree[v]);
+        }
+        analysis.meanDegree = n > 0 ? (double) edges / n : 0.0;
+
+        // SCCs by forward-backward reachability, trimming trivial components first
+        long[] remaining = new long[words];
+        for (int v = 0; v < n; v++) remaining[v >>> 6] |= 1L << v;
+        int[] component = new int[n];
+        Arrays.fill(component, -1);
+        int numComponents = trimTrivialComponents(out, in, remaining, component, 0);
+        for (int v = nextSetBit(remaining, 0); v >= 0; v = nextSetBit(remaining, 0)) {
+            long[] forward = reachable(out, v, remaining);
+            long[] backward = reachable(in, v, remaining);
+            int size = 0;
+            for (int w = 0; w < words; w++) {
+                long scc = forward[w] & backward[w];
+                remaining[w] &= ~scc;
+                for (long bits = scc; bits != 0; bits &= bits - 1) {
+                    component[(w << 6) + Long.numberOfTrailingZeros(bits)] = numComponents;
+                    size++;
+                }
+            }
+            analysis.largestComponent = Math.max(analysis.largestComponent, size);
+            numComponents++;
+            numComponents = trimTrivialComponents(out, in, remaining, component, numComponents);
+        }
+        analysis.numComponents = numComponents;
+        if (n > 0) analysis.largestComponent = Math.max(analysis.largestComponent, 1);
+
+        int mandatory = -1;
+        for (int v = 0; v < n; v++) {
+            if (instance.getViewPoint(v).isMandatory()) {
+                mandatory = v;
+                break;
+            }
+        }
+
+        boolean[] unreachable = new boolean[n];
+        if (mandatory >= 0) {
+            for (int v = 0; v < n; v++) {
+                if (component[v] == component[mandatory]) {
+                    analysis.mandatoryComponent++;
+                } else {
+                    unreachable[v] = true;
+                    analysis.prunedViewPoints++;
+                }
+            }
+        }
+        instance.setUnusable(unreachable);
+
+        // Samples that cannot reach the coverage threshold from usable viewpoints
+        CoveringPairStore pairs = instance.getPairs();
+        for (int s = 0; s < instance.numSamples(); s++) {
+            int usable = 0;
+            for (int k = pairs.sampleStart(s); k < pairs.sampleEnd(s) && usable < coverageThreshold; k++) {
+                if (instance.isUsable(CoveringPairStore.id(pairs.samplePair(k)))) usable++;
+            }
+            if (usable < coverageThreshold) {
+                analysis.infeasibleSamples.add(instance.getSample(s).getId());
+            }
+        }
+
+        System.err.println("Collision graph: " + n + " viewpoints, " + edges + " edges, " +
+                "out-degree " + analysis.minOutDegree + ".." + analysis.maxOutDegree +
+                ", in-degree " + analysis.minInDegree + ".." + analysis.maxInDegree +
+                ", mean " + String.format("%.1f", analysis.meanDegree));
+        System.err.println("Components: " + analysis.numComponents + " SCCs, largest " +
+                analysis.largestComponent + ", mandatory SCC " + analysis.mandatoryComponent +
+                ", pruned " + analysis.prunedViewPoints + " viewpoints");
+        if (!analysis.isFeasible()) {
+            System.err.println("WARNING: Instance is infeasible: " + analysis.infeasibleSamples.size() +
+                    " samples cannot be covered " + coverageThreshold + " times (e.g. " +
+                    analysis.infeasibleSamples.subList(0, Math.min(5, analysis.infeasibleSamples.size())) + ")");
+        }
+        return analysis;
+    }
+
+    /**
+     * Repeatedly removes vertices without in- or out-edges inside the remaining set, each one is
+     * a singleton SCC. Returns the next free component number.
+     */
+    private static int trimTrivialComponents(long[][] out, long[][] in, long[] remaining,
+                                             int[] component, int numComponents) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int v = nextSetBit(remaining, 0); v >= 0; v = nextSetBit(remaining, v + 1)) {
+                if (!intersects(out[v], remaining, v) || !intersects(in[v], remaining, v)) {
+                    remaining[v >>> 6] &= ~(1L << v);
+                    component[v] = numComponents++;
+                    changed = true;
+                }
+            }
+        }
+        return numComponents;
+    }
+
+    /** True if the adjacency row has a neighbour other than self inside the set. */
+    private static boolean intersects(long[] row, long[] set, int self) {
+        for (int w = 0; w < Math.min(row.length, set.length); w++) {
+            long bits = row[w] & set[w];
+            if (w == self >>> 6) bits &= ~(1L << self);
+            if (bits != 0) return true;
+        }
+        return false;
+    }
+
+    /** Bitset BFS from source over adj, restricted to the allowed set. Includes the source. */
+    private static long[] reachable(long[][] adj, int source, long[] allowed) {
+        int words = allowed.length;
+        long[] visited = new long[words];
+        long[] frontier = new long[words];
+        long[] next = new long[words];
+        visited[source >>> 6] = frontier[source >>> 6] = 1L << source;
+        boolean any = true;
+        while (any) {
+            Arrays.fill(next, 0L);
+            for (int w = 0; w < words; w++) {
+                for (long bits = frontier[w]; bits != 0; bits &= bits - 1) {
+                    long[] row = adj[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                    for (int x = 0; x < Math.min(words, row.length); x++) next[x] |= row[x];
+                }
+            }
+            any = false;
+            for (int w = 0; w < words; w++) {
+                long fresh = next[w] & allowed[w] & ~visited[w];
+                visited[w] |= fresh;
+                frontier[w] = fresh;
+                any |= fresh != 0;
+            }
+        }
+        return visited;
+    }
+
+    private static int nextSetBit(long[] bits, int from) {
+        int w = from >>> 6;
+        if (w >= bits.length) return -1;
+        long word = bits[w] & (-1L << from);
+        while (true) {
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == bits.length) return -1;
+            word = bits[w];
+        }
+    }
+
+    // ==================== Dominance Reduction ====================
+
+    /**
+     * Removes dominated (viewpoint, angle) pairs. Because every sample needs coverageThreshold
+     * distinct covers, a pair is only dropped when that many other usable pairs each cover a
+     * superset of its samples with at least the same precision (ties broken by size and id):
+     * whichever of them a solution does not use yet can take its place. Pairs of the mandatory
+     * viewpoint are kept, and no pair is removed from a sample with coverageThreshold or fewer
+     * covering pairs. Viewpoints left without pairs are marked unusable.
+     */
+    private static void reduceDominated(CompiledInstance instance) throws IOException {
+        int numAngles = instance.numAngles();
+        int numPairIds = instance.numViewPoints() * numAngles;
+        CoveringPairStore pairs = instance.getPairs();
+
+        // Sorted distinct samples per pair id, only for pairs of usable viewpoints: samples
+        // [offsets[p], offsets[p] + size[p]) of members. The store lists the samples of a viewpoint
+        // in increasing order, so duplicates are adjacent within a pair.
+        int[] offsets = new int[numPairIds + 1];
+        int mandatory = -1;
+        for (int v = 0; v < instance.numViewPoints(); v++) {
+            if (instance.getViewPoint(v).isMandatory()) mandatory = v;
+            if (!instance.isUsable(v)) continue;
+            for (int k = pairs.vpStart(v); k < pairs.vpEnd(v); k++) {
+                offsets[v * numAngles + CoveringPairStore.angle(pairs.vpPair(k)) + 1]++;
+            }
+        }
+        for (int p = 0; p < numPairIds; p++) {
+            offsets[p + 1] += offsets[p];
+        }
+        int[] members = new int[offsets[numPairIds]];
+        int[] size = new int[numPairIds];
+        int[] remaining = new int[instance.numSamples()];
+        for (int v = 0; v < instance.numViewPoints(); v++) {
+            if (!instance.isUsable(v)) continue;
+            for (int k = pairs.vpStart(v); k < pairs.vpEnd(v); k++) {
+                int packed = pairs.vpPair(k);
+                int s = CoveringPairStore.id(packed);
+                int p = v * numAngles + CoveringPairStore.angle(packed);
+                if (size[p] > 0 && members[offsets[p] + size[p] - 1] == s) continue;
+                members[offsets[p] + size[p]++] = s;
+                remaining[s]++;
+            }
+        }
+
+        // Candidates in increasing size: a pair can only be dominated by a pair at least as large
+        List<Integer> order = new ArrayList<>();
+        for (int p = 0; p < numPairIds; p++) {
+            if (size[p] > 0) order.add(p);
+        }
+        order.sort(Comparator.comparingInt((Integer p) -> size[p]).thenComparing(p -> p));
+
+        boolean[] removed = new boolean[numPairIds];
+        int removedPairs = 0;
+        long subsetTests = 0;
+        for (int p : order) {
+            int v = p / numAngles;
+            if (v == mandatory) continue;
+
+            // Dominators must cover the sample of p with the fewest covering pairs
+            int rarest = -1;
+            boolean removable = true;
+            for (int i = offsets[p]; i < offsets[p] + size[p]; i++) {
+                int s = members[i];
+                if (remaining[s] <= coverageThreshold) {
+                    removable = false;
+                    break;
+                }
+                if (rarest < 0 || pairs.sampleEnd(s) - pairs.sampleStart(s)
+                        < pairs.sampleEnd(rarest) - pairs.sampleStart(rarest)) {
+                    rarest = s;
+                }
+            }
+            if (!removable || rarest < 0) continue;
+
+            double prec = instance.getPrecision(v, p % numAngles);
+            int dominators = 0;
+            for (int k = pairs.sampleStart(rarest); k < pairs.sampleEnd(rarest); k++) {
+                int packed = pairs.samplePair(k);
+                int q = CoveringPairStore.id(packed) * numAngles + CoveringPairStore.angle(packed);
+                if (q == p || size[q] == 0 || removed[q] || size[q] < size[p]) continue;
+                double qPrec = instance.getPrecision(CoveringPairStore.id(packed), CoveringPairStore.angle(packed));
+                if (qPrec < prec || (qPrec == prec && size[q] == size[p] && q > p)) continue;
+
+                subsetTests++;
+                if (isSubset(members, offsets[p], size[p], offsets[q], size[q]) && ++dominators == coverageThreshold) {
+                    removed[p] = true;
+                    removedPairs++;
+                    for (int i = offsets[p]; i < offsets[p] + size[p]; i++) {
+                        remaining[members[i]]--;
+                    }
+                    break;
+                }
+            }
+        }
+
+        int removedViewPoints = 0;
+        if (removedPairs > 0) {
+            for (int v = 0; v < instance.numViewPoints(); v++) {
+                if (v == mandatory || !instance.isUsable(v)) continue;
+                boolean any = false;
+                for (int a = 0; a < numAngles && !any; a++) {
+                    any = size[v * numAngles + a] > 0 && !removed[v * numAngles + a];
+                }
+                if (!any && pairs.vpEnd(v) > pairs.vpStart(v)) {
+                    instance.markUnusable(v);
+                    removedViewPoints++;
+                }
+            }
+            instance.removePairs(removed);
+        }
+
+        System.err.println("Dominance: removed " + removedPairs + "/" + order.size() + " pairs and " +
+                removedViewPoints + " viewpoints (" + subsetTests + " subset tests), " +
+                instance.getPairs().numPairs() + " covering pairs left");
+    }
+
+    // True if the sorted run members[a, a + aSize) is contained in the sorted run members[b, b + bSize)
+    private static boolean isSubset(int[] members, int a, int aSize, int b, int bSize) {
+        int j = b, bEnd = b + bSize;
+        for (int i = a; i < a + aSize; i++) {
+            int s = members[i];
+            while (j < bEnd && members[j] < s) j++;
+            if (j == bEnd || members[j] != s) return false;
+            j++;
+        }
+        return true;
+    }
+
+    // ==================== Exact Solver ====================
+
+    // Whether this instance goes to the exact solver (--exact auto|on|off, --exact-threshold)
+    private static boolean useExactSolver(CompiledInstance instance) {
+        if (exactMode.equals("off")) return false;
+        int usable = 0;
+        for (int v = 0; v < instance.numViewPoints(); v++) {
+            if (instance.isUsable(v)) usable++;
+        }
+        if (usable > EXACT_MAX_VIEWPOINTS) {
+            if (exactMode.equals("on")) {
+                System.err.println("Exact solver: " + usable + " usable viewpoints, limit is " + EXACT_MAX_VIEWPOINTS);
+            }
+            return false;
+        }
+        return exactMode.equals("on") || usable <= exactThreshold;
+    }
+
+    /**
+     * Exact branch-and-bound over the usable viewpoints of a small instance. Every sample with at
+     * least coverageThreshold usable covering pairs must reach the threshold, and among those selections the tour
+     * distance minus precision is minimised. Returns null if no feasible tour exists or the search
+     * did not finish within budgetMs, so the caller falls back to the heuristic.
+     */
+    private static Solution exactSolve(CompiledInstance instance, long budgetMs) {
+        long start = System.currentTimeMillis();
+        ExactSearch search = ExactSearch.build(instance);
+        if (search == null) {
+            System.err.println("Exact: not applicable (no mandatory viewpoint or too many angles per viewpoint)");
+            return null;
+        }
+        System.err.println("Exact: " + search.n + " viewpoints, " + search.numPairs + " pairs, " +
+                search.requiredSamples() + " required samples, Held-Karp table in " +
+                (System.currentTimeMillis() - start) + " ms");
+
+        search.deadline = start + budgetMs;
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                new AccountedWorkerFactory(), null, false);
+        try {
+            pool.invoke(search.root());
+        } finally {
+            pool.shutdown();
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        if (search.aborted || search.bestChoice == null) {
+            System.err.println("Exact: " + (search.aborted ? "time budget exhausted" : "no feasible tour") +
+                    " after " + search.nodes.get() + " nodes, " + elapsed + " ms");
+            return null;
+        }
+        System.err.println(String.format("Exact: optimal objective %.2f (%d nodes, %d ms)",
+                search.best, search.nodes.get(), elapsed));
+        Solution solution = search.toSolution(instance);
+        solution.setProvenOptimal(true);
+        return solution;
+    }
+
+    /**
+     * Search state and precomputed data of the exact solver. Viewpoints are decided in a fixed
+     * order (mandatory first, then by number of covering pairs) by choosing a subset of their
+     * angles; the empty subset means the viewpoint is not visited, and once visited its angles with
+     * non-negative precision are always taken. Coverage is one saturating sample bitset per level
+     * (level l holds the samples with more than l covers, up to the threshold). A node is pruned when the undecided viewpoints cannot complete
+     * the cover of the required samples, or when its lower bound reaches the incumbent: the cost
+     * so far, plus the multicover relaxation of the remaining cover (each pair's cost charged
+     * evenly to the samples it covers, cheapest missing covers per sample), plus the cheapest
+     * incoming edge of every visited viewpoint. Closed tour lengths of all viewpoint subsets are
+     * memoised up front in one Held-Karp table.
+     */
+    static class ExactSearch {
+        final int n;              // viewpoints in search order, depth 0 is the mandatory one
+        final int[] vps;          // dense id per depth
+        final int words;
+        final int levels;         // coverage threshold
+        final long[] required;    // samples that must reach the threshold
+        final int numPairs;
+        final long[][] pairBits;  // samples per (viewpoint, angle) pair
+        final int[] pairAngle;
+        final int[][][] options;  // per depth: pair lists of the angle subsets to try
+        final double[][] optionCost;
+        final long[][][] avail;                // [d][l]: samples with more than l pairs at depth >= d
+        final double[][] cheapest;             // [d][s * (levels + 1) + k]: cheapest k charged covers at depth >= d
+        final double[] positiveBound;          // cost of all non-negative precision pairs at depth >= d
+        final double[][] dist;
+        final boolean[][] allowed;
+        final double[] dp;        // Held-Karp: [mask * (n - 1) + j], path from depth 0 over mask ending at j + 1
+        final double[] tourLength; // closed tour over depth 0 and mask, by mask of depths 1..n-1
+        final double range;
+        final int splitDepth;
+
+        volatile double best = Double.POSITIVE_INFINITY;
+        volatile int[] bestChoice;
+        volatile boolean aborted;
+        volatile long deadline = Long.MAX_VALUE;
+        final AtomicLong nodes = new AtomicLong();
+
+        private ExactSearch(int n, int[] vps, int words, long[] required, int numPairs, long[][] pairBits,
+                            int[] pairAngle, int[][][] options, double[][] optionCost, long[][][] avail,
+                            double[][] cheapest, double[] positiveBound,
+                            double[][] dist, boolean[][] allowed, double[] dp, double[] tourLength) {
+            this.n = n;
+            this.vps = vps;
+            this.words = words;
+            this.required = required;
+            this.numPairs = numPairs;
+            this.pairBits = pairBits;
+            this.pairAngle = pairAngle;
+            this.options = options;
+            this.optionCost = optionCost;
+            this.levels = coverageThreshold;
+            this.avail = avail;
+            this.cheapest = cheapest;
+            this.positiveBound = positiveBound;
+            this.dist = dist;
+            this.allowed = allowed;
+            this.dp = dp;
+            this.tourLength = tourLength;
+            this.range = constructionRange();
+
+            // Fork until there are enough subtrees to keep every worker busy
+            int depth = 0;
+            long subtrees = 1;
+            int target = 8 * Runtime.getRuntime().availableProcessors();
+            while (depth < n && subtrees < target) {
+                subtrees *= options[depth].length;
+                depth++;
+            }
+            this.splitDepth = depth;
+        }
+
+        int requiredSamples() {
+            int count = 0;
+            for (long w : required) count += Long.bitCount(w);
+            return count;
+        }
+
+        static ExactSearch build(CompiledInstance instance) {
+            CoveringPairStore pairs = instance.getPairs();
+            int numSamples = instance.numSamples();
+            int words = (numSamples + 63) >>> 6;
+
+            // Search order: mandatory first, then by number of covering pairs
+            List<Integer> order = new ArrayList<>();
+            int mandatory = -1;
+            for (int v = 0; v < instance.numViewPoints(); v++) {
+                if (!instance.isUsable(v)) continue;
+                if (instance.getViewPoint(v).isMandatory()) mandatory = v;
+                else order.add(v);
+            }
+            if (mandatory < 0) return null;
+            order.sort((a, b) -> Integer.compare(pairs.vpEnd(b) - pairs.vpStart(b), pairs.vpEnd(a) - pairs.vpStart(a)));
+            order.add(0, mandatory);
+            int n = order.size();
+            int[] vps = new int[n];
+            for (int d = 0; d < n; d++) vps[d] = order.get(d);
+
+            // Pairs per depth, with their sample bitsets
+            List<long[]> bits = new ArrayList<>();
+            List<Integer> angles = new ArrayList<>();
+            List<Integer> depths = new ArrayList<>();
+            int[] coverCount = new int[numSamples];
+            for (int d = 0; d < n; d++) {
+                Map<Integer, long[]> byAngle = new TreeMap<>();
+                for (int k = pairs.vpStart(vps[d]); k < pairs.vpEnd(vps[d]); k++) {
+                    int packed = pairs.vpPair(k);
+                    int s = CoveringPairStore.id(packed);
+                    byAngle.computeIfAbsent(CoveringPairStore.angle(packed), a -> new long[words])[s >>> 6] |= 1L << s;
+                    coverCount[s]++;
+                }
+                for (Map.Entry<Integer, long[]> e : byAngle.entrySet()) {
+                    bits.add(e.getValue());
+                    angles.add(e.getKey());
+                    depths.add(d);
+                }
+            }
+            int numPairs = bits.size();
+            long[][] pairBits = bits.toArray(new long[0][]);
+            int[] pairAngle = new int[numPairs];
+            double[] pairCost = new double[numPairs];
+            for (int p = 0; p < numPairs; p++) {
+                pairAngle[p] = angles.get(p);
+                pairCost[p] = -instance.getPrecision(vps[depths.get(p)], pairAngle[p]);
+            }
+
+            long[] required = new long[words];
+            for (int s = 0; s < numSamples; s++) {
+                if (coverCount[s] >= coverageThreshold) required[s >>> 6] |= 1L << s;
+            }
+
+            // Angle subsets per depth: non-negative precision angles always, any subset of the rest
+            int[][][] options = new int[n][][];
+            double[][] optionCost = new double[n][];
+            for (int d = 0; d < n; d++) {
+                List<Integer> free = new ArrayList<>();
+                List<Integer> costly = new ArrayList<>();
+                for (int p = 0; p < numPairs; p++) {
+                    if (depths.get(p) != d) continue;
+                    if (pairCost[p] <= 0) free.add(p);
+                    else costly.add(p);
+                }
+                if (costly.size() > 16) return null;
+
+                // Largest subsets first so that a feasible incumbent is found early, not visiting last
+                List<Integer> masks = new ArrayList<>();
+                for (int m = (1 << costly.size()) - 1; m >= 0; m--) {
+                    if (m != 0 || !free.isEmpty() || d == 0) masks.add(m);
+                }
+                masks.sort((a, b) -> Integer.bitCount(b) - Integer.bitCount(a));
+                if (d > 0) masks.add(-1);
+
+                options[d] = new int[masks.size()][];
+                optionCost[d] = new double[masks.size()];
+                for (int o = 0; o < masks.size(); o++) {
+                    int m = masks.get(o);
+                    List<Integer> chosen = new ArrayList<>();
+                    if (m >= 0) {
+                        chosen.addAll(free);
+                        for (int j = 0; j < costly.size(); j++) {
+                            if ((m & (1 << j)) != 0) chosen.add(costly.get(j));
+                        }
+                    }
+                    options[d][o] = chosen.stream().mapToInt(Integer::intValue).toArray();
+                    for (int p : options[d][o]) optionCost[d][o] += pairCost[p];
+                }
+            }
+
+            // Suffix availability, multicover charges and non-negative precision bound
+            int[] degree = new int[numPairs];
+            for (int p = 0; p < numPairs; p++) {
+                for (int w = 0; w < words; w++) degree[p] += Long.bitCount(pairBits[p][w] & required[w]);
+            }
+            int levels = coverageThreshold;
+            long[][][] avail = new long[n + 1][levels][words];
+            double[][] cheapest = new double[n + 1][];
+            double[] positiveBound = new double[n + 1];
+            double[] top = new double[numSamples * levels];
+            Arrays.fill(top, Double.POSITIVE_INFINITY);
+            cheapest[n] = suffixCheapest(top, numSamples, levels);
+            for (int d = n - 1; d >= 0; d--) {
+                for (int l = 0; l < levels; l++) avail[d][l] = avail[d + 1][l].clone();
+                positiveBound[d] = positiveBound[d + 1];
+                for (int p = 0; p < numPairs; p++) {
+                    if (depths.get(p) != d) continue;
+                    addCover(avail[d], pairBits[p]);
+                    if (pairCost[p] < 0) positiveBound[d] += pairCost[p];
+                    double charge = Math.max(pairCost[p], 0.0) / Math.max(degree[p], 1);
+                    for (int s = nextSetBit(pairBits[p], 0); s >= 0; s = nextSetBit(pairBits[p], s + 1)) {
+                        // Keep the smallest charges per sample (one per level), ascending
+                        int base = s * levels;
+                        double c = charge;
+                        for (int j = 0; j < levels; j++) {
+                            if (c < top[base + j]) {
+                                double t = top[base + j];
+                                top[base + j] = c;
+                                c = t;
+                            }
+                        }
+                    }
+                }
+                cheapest[d] = suffixCheapest(top, numSamples, levels);
+            }
+
+            // Distances and the Held-Karp table over all subsets of depths 1..n-1
+            CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+            double[][] dist = new double[n][n];
+            boolean[][] allowed = new boolean[n][n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    dist[i][j] = instance.getViewPoint(vps[i]).distanceTo(instance.getViewPoint(vps[j]));
+                    allowed[i][j] = i != j && collisionMatrix.allowed(vps[i], vps[j]);
+                }
+            }
+            int k = n - 1;
+            double[] dp = new double[(1 << k) * Math.max(k, 1)];
+            Arrays.fill(dp, Double.POSITIVE_INFINITY);
+            for (int j = 0; j < k; j++) {
+                if (allowed[0][j + 1]) dp[(1 << j) * k + j] = dist[0][j + 1];
+            }
+            double[] tourLength = new double[1 << k];
+            for (int mask = 1; mask < (1 << k); mask++) {
+                double closed = Double.POSITIVE_INFINITY;
+                for (int j = 0; j < k; j++) {
+                    double cur = dp[mask * k + j];
+                    if (cur == Double.POSITIVE_INFINITY) continue;
+                    if (allowed[j + 1][0]) closed = Math.min(closed, cur + dist[j + 1][0]);
+                    for (int next = 0; next < k; next++) {
+                        if ((mask & (1 << next)) != 0 || !allowed[j + 1][next + 1]) continue;
+                        int idx = (mask | (1 << next)) * k + next;
+                        double cand = cur + dist[j + 1][next + 1];
+                        if (cand < dp[idx]) dp[idx] = cand;
+                    }
+                }
+                tourLength[mask] = closed;
+            }
+
+            return new ExactSearch(n, vps, words, required, numPairs, pairBits, pairAngle, options, optionCost,
+                    avail, cheapest, positiveBound, dist, allowed, dp, tourLength);
+        }
+
+        // [s * (levels + 1) + k] = sum of the k smallest charges of sample s (infinite if fewer than k)
+        private static double[] suffixCheapest(double[] top, int numSamples, int levels) {
+            double[] sums = new double[numSamples * (levels + 1)];
+            for (int s = 0; s < numSamples; s++) {
+                int base = s * (levels + 1);
+                for (int j = 0; j < levels; j++) {
+                    sums[base + j + 1] = sums[base + j] + top[s * levels + j];
+                }
+            }
+            return sums;
+        }
+
+        // Saturating add of one cover to the per-level bitsets
+        static void addCover(long[][] cover, long[] bits) {
+            for (int w = 0; w < bits.length; w++) {
+                for (int l = cover.length - 1; l > 0; l--) {
+                    cover[l][w] |= cover[l - 1][w] & bits[w];
+                }
+                cover[0][w] |= bits[w];
+            }
+        }
+
+        static long[][] copy(long[][] cover) {
+            long[][] result = new long[cover.length][];
+            for (int l = 0; l < cover.length; l++) result[l] = cover[l].clone();
+            return result;
+        }
+
+        ExactTask root() {
+            return new ExactTask(this, 0, new long[levels][words], 0.0, 1, new int[n]);
+        }
+
+        // True if the viewpoints from depth d on can still bring every required sample to the threshold
+        boolean completable(int d, long[][] cover) {
+            long[][] rest = avail[d];
+            for (int w = 0; w < words; w++) {
+                // more than i covers so far and more than (levels - 2 - i) still available
+                long reachable = cover[levels - 1][w] | rest[levels - 1][w];
+                for (int i = 0; i < levels - 1; i++) {
+                    reachable |= cover[i][w] & rest[levels - 2 - i][w];
+                }
+                if ((required[w] & ~reachable) != 0) return false;
+            }
+            return true;
+        }
+
+        double lowerBound(int d, long[][] cover, double cost, int visited) {
+            double bound = cost + positiveBound[d];
+
+            // Multicover relaxation of the missing covers
+            double[] sums = cheapest[d];
+            for (int w = 0; w < words; w++) {
+                long missing = required[w] & ~cover[levels - 1][w];
+                while (missing != 0) {
+                    int bit = Long.numberOfTrailingZeros(missing);
+                    missing &= missing - 1;
+                    int covers = 0;
+                    while (covers < levels - 1 && (cover[covers][w] & (1L << bit)) != 0) covers++;
+                    bound += sums[((w << 6) + bit) * (levels + 1) + levels - covers];
+                }
+            }
+
+            // Every visited viewpoint is entered by an edge from a visited or undecided one
+            if (visited != 1) {
+                int sources = visited | (d < n ? ~0 << d : 0);
+                for (int v = 0; v < n; v++) {
+                    if ((visited & (1 << v)) == 0) continue;
+                    double in = Double.POSITIVE_INFINITY;
+                    for (int u = 0; u < n; u++) {
+                        if ((sources & (1 << u)) != 0 && allowed[u][v]) in = Math.min(in, dist[u][v]);
+                    }
+                    bound += in;
+                }
+            }
+            return bound;
+        }
+
+        synchronized void offer(double cost, int[] choice) {
+            if (cost < best) {
+                best = cost;
+                bestChoice = choice.clone();
+            }
+        }
+
+        void search(int d, long[][] cover, double cost, int visited, int[] choice) {
+            if (aborted) return;
+            if ((nodes.incrementAndGet() & 4095) == 0 && System.currentTimeMillis() > deadline) {
+                aborted = true;
+                return;
+            }
+            if (d == n) {
+                if (!completable(n, cover)) return;
+                double length = tourLength[visited >>> 1];
+                if (length <= range && cost + length < best) offer(cost + length, choice);
+                return;
+            }
+            if (!completable(d, cover) || lowerBound(d, cover, cost, visited) >= best) return;
+
+            for (int o = 0; o < options[d].length; o++) {
+                long[][] next = copy(cover);
+                for (int p : options[d][o]) addCover(next, pairBits[p]);
+                choice[d] = o;
+                search(d + 1, next, cost + optionCost[d][o],
+                        (options[d][o].length > 0) ? visited | (1 << d) : visited, choice);
+            }
+        }
+
+        Solution toSolution(CompiledInstance instance) {
+            int k = n - 1;
+            int visited = 0;
+            for (int d = 1; d < n; d++) {
+                if (options[d][bestChoice[d]].length > 0) visited |= 1 << (d - 1);
+            }
+
+            // Walk the Held-Karp table back from the cheapest closing edge
+            LinkedList<Integer> path = new LinkedList<>();
+            int mask = visited;
+            int last = -1;
+            if (mask != 0) {
+                for (int j = 0; j < k; j++) {
+                    if ((mask & (1 << j)) != 0 && allowed[j + 1][0] &&
+                            Math.abs(dp[mask * k + j] + dist[j + 1][0] - tourLength[mask]) < 1e-9) {
+                        last = j;
+                        break;
+                    }
+                }
+            }
+            while (mask != 0) {
+                path.addFirst(last + 1);
+                int prevMask = mask & ~(1 << last);
+                int prev = -1;
+                for (int i = 0; i < k && prevMask != 0; i++) {
+                    if ((prevMask & (1 << i)) != 0 && allowed[i + 1][last + 1] &&
+                            Math.abs(dp[prevMask * k + i] + dist[i + 1][last + 1] - dp[mask * k + last]) < 1e-9) {
+                        prev = i;
+                        break;
+                    }
+                }
+                mask = prevMask;
+                last = prev;
+            }
+            path.addFirst(0);
+
+            Solution solution = new Solution();
+            for (int d : path) {
+                ViewPoint vp = instance.getViewPoint(vps[d]);
+                solution.addViewPoint(vp);
+                for (int p : options[d][bestChoice[d]]) {
+                    solution.addAngle(vp, instance.getAngleId(pairAngle[p]));
+                }
+            }
+            return solution;
+        }
+    }
+
+    /**
+     * Explores one subtree of the exact search: above the split depth every angle subset becomes
+     * its own task for the work-stealing pool, below it the subtree is searched sequentially.
+     */
+    static class ExactTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ExactSearch search;
+        private final int depth;
+        private final long[][] cover;
+        private final double cost;
+        private final int visited;
+        private final int[] choice;
+
+        ExactTask(ExactSearch search, int depth, long[][] cover, double cost, int visited, int[] choice) {
+            this.search = search;
+            this.depth = depth;
+            this.cover = cover;
+            this.cost = cost;
+            this.visited = visited;
+            this.choice = choice;
+        }
+
+        @Override
+        protected void compute() {
+            if (depth >= search.splitDepth || depth == search.n) {
+                search.search(depth, cover, cost, visited, choice);
+                return;
+            }
+            if (!search.completable(depth, cover)) return;
+
+            List<ExactTask> subtasks = new ArrayList<>();
+            int[][] options = search.options[depth];
+            for (int o = 0; o < options.length; o++) {
+                long[][] next = ExactSearch.copy(cover);
+                for (int p : options[o]) ExactSearch.addCover(next, search.pairBits[p]);
+                int[] nextChoice = choice.clone();
+                nextChoice[depth] = o;
+                subtasks.add(new ExactTask(search, depth + 1, next, cost + search.optionCost[depth][o],
+                        options[o].length > 0 ? visited | (1 << depth) : visited, nextChoice));
+            }
+            invokeAll(subtasks);
+        }
+    }
+
+    // ==================== Coverage & Distance Kernels ====================
+
+    /**
+     * Inner loops of construction and improvement over dense arrays.
+     * One implementation is picked at startup (see selectKernels).
+     */
+    interface CoverageKernels {
+        String name();
+
+        /**
+         * gains[v] = number of samples in samples[offsets[v] .. offsets[v + 1]) with count below
+         * threshold, for every v with active[v] set (others are left untouched).
+         */
+        void marginalGains(int[] offsets, int[] samples, int[] count, int threshold, boolean[] active, int[] gains);
+
+        /**
+         * deltas[i] = d(tour[i], c) + d(c, tour[i + 1]) - edge[i] for i in [0, n), where tour[n] is tour[0].
+         * dist is scratch space of at least n doubles.
+         */
+        void insertionDeltas(double[] tx, double[] ty, double[] tz, double[] edge, int n,
+                             double cx, double cy, double cz, double[] dist, double[] deltas);
+
+        /**
+         * For the points i in [0, n): dist[i] = |p[i] - v| and cos[d * n + i] = the cosine between
+         * the ray v -> p[i] and unit direction d (dirs holds numDirs x, y, z triples).
+         * scratch is at least 3 * n doubles.
+         */
+        void rayCosines(double[] px, double[] py, double[] pz, int n, double vx, double vy, double vz,
+                        double[] dirs, int numDirs, double[] dist, double[] scratch, double[] cos);
+    }
+
+    /**
+     * Straightforward loops, one element at a time.
+     */
+    static class ScalarKernels implements CoverageKernels {
+        public String name() { return "scalar"; }
+
+        public void marginalGains(int[] offsets, int[] samples, int[] count, int threshold, boolean[] active,
+                                  int[] gains) {
+            for (int v = 0; v < active.length; v++) {
+                if (!active[v]) continue;
+                int gain = 0;
+                for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                    if (count[samples[k]] < threshold) gain++;
+                }
+                gains[v] = gain;
+            }
+        }
+
+        public void insertionDeltas(double[] tx, double[] ty, double[] tz, double[] edge, int n,
+                                    double cx, double cy, double cz, double[] dist, double[] deltas) {
+            for (int i = 0; i < n; i++) {
+                int j = (i + 1 < n) ? i + 1 : 0;
+                double d1 = Math.sqrt((tx[i] - cx) * (tx[i] - cx) + (ty[i] - cy) * (ty[i] - cy) + (tz[i] - cz) * (tz[i] - cz));
+                double d2 = Math.sqrt((tx[j] - cx) * (tx[j] - cx) + (ty[j] - cy) * (ty[j] - cy) + (tz[j] - cz) * (tz[j] - cz));
+                deltas[i] = d1 + d2 - edge[i];
+            }
+        }
+
+        public void rayCosines(double[] px, double[] py, double[] pz, int n, double vx, double vy, double vz,
+                               double[] dirs, int numDirs, double[] dist, double[] scratch, double[] cos) {
+            for (int i = 0; i < n; i++) {
+                double dx = px[i] - vx;
+                double dy = py[i] - vy;
+                double dz = pz[i] - vz;
+                dist[i] = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                for (int d = 0; d < numDirs; d++) {
+                    cos[d * n + i] = (dist[i] > 0)
+                            ? (dx * dirs[3 * d] + dy * dirs[3 * d + 1] + dz * dirs[3 * d + 2]) / dist[i]
+                            : 0.0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Branch-free, batched versions of the same loops. The distance kernel computes each
+     * candidate-to-tour distance once into a scratch array in a straight-line loop over
+     * structure-of-arrays coordinates (which the JIT turns into packed sub/mul/sqrt), then forms
+     * the deltas in a second loop. The gain kernel replaces the compare-and-branch with a sign
+     * shift and sums four independent lanes.
+     */
+    static class BatchedKernels implements CoverageKernels {
+        public String name() { return "batched"; }
+
+        public void marginalGains(int[] offsets, int[] samples, int[] count, int threshold, boolean[] active,
+                                  int[] gains) {
+            for (int v = 0; v < active.length; v++) {
+                if (!active[v]) continue;
+                int from = offsets[v];
+                int to = offsets[v + 1];
+                int g0 = 0, g1 = 0, g2 = 0, g3 = 0;
+                int k = from;
+                // (count - threshold) >>> 31 is 1 exactly when count < threshold
+                for (; k + 3 < to; k += 4) {
+                    g0 += (count[samples[k]] - threshold) >>> 31;
+                    g1 += (count[samples[k + 1]] - threshold) >>> 31;
+                    g2 += (count[samples[k + 2]] - threshold) >>> 31;
+                    g3 += (count[samples[k + 3]] - threshold) >>> 31;
+                }
+                for (; k < to; k++) {
+                    g0 += (count[samples[k]] - threshold) >>> 31;
+                }
+                gains[v] = g0 + g1 + g2 + g3;
+            }
+        }
+
+        public void insertionDeltas(double[] tx, double[] ty, double[] tz, double[] edge, int n,
+                                    double cx, double cy, double cz, double[] dist, double[] deltas) {
+            for (int i = 0; i < n; i++) {
+                double dx = tx[i] - cx;
+                double dy = ty[i] - cy;
+                double dz = tz[i] - cz;
+                dist[i] = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            }
+            for (int i = 0; i < n - 1; i++) {
+                deltas[i] = dist[i] + dist[i + 1] - edge[i];
+            }
+            if (n > 0) {
+                deltas[n - 1] = dist[n - 1] + dist[0] - edge[n - 1];
+            }
+        }
+
+        // Normalises the rays once into scratch, then one straight dot-product loop per direction
+        public void rayCosines(double[] px, double[] py, double[] pz, int n, double vx, double vy, double vz,
+                               double[] dirs, int numDirs, double[] dist, double[] scratch, double[] cos) {
+            for (int i = 0; i < n; i++) {
+                double dx = px[i] - vx;
+                double dy = py[i] - vy;
+                double dz = pz[i] - vz;
+                double d = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                double inv = (d > 0) ? 1.0 / d : 0.0;
+                dist[i] = d;
+                scratch[i] = dx * inv;
+                scratch[n + i] = dy * inv;
+                scratch[2 * n + i] = dz * inv;
+            }
+            for (int d = 0; d < numDirs; d++) {
+                double ux = dirs[3 * d];
+                double uy = dirs[3 * d + 1];
+                double uz = dirs[3 * d + 2];
+                int base = d * n;
+                for (int i = 0; i < n; i++) {
+                    cos[base + i] = scratch[i] * ux + scratch[n + i] * uy + scratch[2 * n + i] * uz;
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the kernels once at startup: the batched kernels on 64-bit x86/ARM, where they measure
+     * faster (--bench-kernels), scalar elsewhere. -Daads.kernels=scalar|batched overrides the choice.
+     */
+    private static CoverageKernels selectKernels() {
+        String forced = System.getProperty("aads.kernels");
+        String arch = System.getProperty("os.arch", "");
+        boolean batched = (forced != null)
+                ? forced.equals("batched")
+                : arch.equals("amd64") || arch.equals("x86_64") || arch.equals("aarch64");
+        return batched ? new BatchedKernels() : new ScalarKernels();
+    }
+
+    /**
+     * Times both kernel implementations on the same synthetic data (5000 viewpoints seeing 60 of
+     * 20000 samples each, a 5000-viewpoint tour, 4096 rays against 14 directions) and prints the
+     * time per call and the speed-up of the batched kernels. Each kernel is warmed up first.
+     */
+    private static void benchmarkKernels() {
+        Random random = new Random(42);
+        int numViewPoints = 5000, perViewPoint = 60, numSamples = 20000;
+        int[] offsets = new int[numViewPoints + 1];
+        int[] samples = new int[numViewPoints * perViewPoint];
+        for (int v = 0; v < numViewPoints; v++) {
+            offsets[v + 1] = offsets[v] + perViewPoint;
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) samples[k] = random.nextInt(numSamples);
+        }
+        int[] count = new int[numSamples];
+        for (int s = 0; s < numSamples; s++) count[s] = random.nextInt(2 * coverageThreshold);
+        boolean[] active = new boolean[numViewPoints];
+        Arrays.fill(active, true);
+        int[] gains = new int[numViewPoints];
+
+        int n = 5000;
+        double[] tx = randomArray(random, n), ty = randomArray(random, n), tz = randomArray(random, n);
+        double[] edge = randomArray(random, n), dist = new double[n], deltas = new double[n];
+        int numPoints = GEOMETRY_BLOCK, numDirs = 14;
+        double[] px = randomArray(random, numPoints), py = randomArray(random, numPoints);
+        double[] pz = randomArray(random, numPoints), dirs = randomArray(random, 3 * numDirs);
+        double[] rayDist = new double[numPoints], scratch = new double[3 * numPoints];
+        double[] cos = new double[numDirs * numPoints];
+
+        CoverageKernels[] implementations = {new ScalarKernels(), new BatchedKernels()};
+        double[][] micros = new double[implementations.length][];
+        for (int round = 0; round < 2; round++) { // round 0 warms up the JIT
+            for (int impl = 0; impl < implementations.length; impl++) {
+                CoverageKernels k = implementations[impl];
+                long t0 = System.nanoTime();
+                for (int it = 0; it < 400; it++) k.marginalGains(offsets, samples, count, coverageThreshold, active, gains);
+                long t1 = System.nanoTime();
+                for (int it = 0; it < 40000; it++) k.insertionDeltas(tx, ty, tz, edge, n, 0.5, 0.5, 0.5, dist, deltas);
+                long t2 = System.nanoTime();
+                for (int it = 0; it < 4000; it++) {
+                    k.rayCosines(px, py, pz, numPoints, 0.5, 0.5, 0.5, dirs, numDirs, rayDist, scratch, cos);
+                }
+                long t3 = System.nanoTime();
+                micros[impl] = new double[]{(t1 - t0) / 400e3, (t2 - t1) / 40000e3, (t3 - t2) / 4000e3};
+            }
+        }
+
+        String[] names = {"marginalGains", "insertionDeltas", "rayCosines"};
+        for (int kernel = 0; kernel < names.length; kernel++) {
+            System.err.println(String.format("Kernel %-16s scalar %9.2f us, batched %9.2f us, speed-up %.2fx",
+                    names[kernel], micros[0][kernel], micros[1][kernel], micros[0][kernel] / micros[1][kernel]));
+        }
+    }
+
+    private static double[] randomArray(Random random, int n) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) values[i] = random.nextDouble();
+        return values;
+    }
+
+    /**
+     * The tour as structure-of-arrays (dense ids, coordinates, edge lengths) for the distance kernel.
+     * edge[i] is the length of tour[i] -> tour[i + 1], the last one closes back to tour[0].
+     */
+    static class TourArrays {
+        private int[] idx;
+        private double[] x, y, z, edge;
+        private double[] dist, deltas; // kernel scratch
+        private int n;
+        private double length; // sum of edge[], kept up to date by updateEdge
+
+        public TourArrays(List<ViewPoint> tour, CompiledInstance instance) {
+            int capacity = Math.max(16, tour.size() * 2);
+            idx = new int[capacity];
+            x = new double[capacity];
+            y = new double[capacity];
+            z = new double[capacity];
+            edge = new double[capacity];
+            dist = new double[capacity];
+            deltas = new double[capacity];
+            n = tour.size();
+            for (int i = 0; i < n; i++) {
+                ViewPoint vp = tour.get(i);
+                idx[i] = instance.indexOf(vp);
+                x[i] = vp.getX();
+                y[i] = vp.getY();
+                z[i] = vp.getZ();
+            }
+            for (int i = 0; i < n; i++) {
+                updateEdge(i);
+            }
+        }
+
+        public int size() { return n; }
+        public int node(int i) { return idx[i]; }
+        public double length() { return length; }
+
+        // True if an insertion costing delta keeps the tour within the range limit
+        public boolean fitsRange(double delta) { return length + delta <= constructionRange(); }
+
+        // Tour position of dense viewpoint id v, or -1
+        public int positionOf(int v) {
+            for (int i = 0; i < n; i++) {
+                if (idx[i] == v) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the list position (>= 1) at which inserting viewpoint v keeps the tour connected
+         * with the smallest distance increase, or -1 if there is none or it would exceed the range
+         * limit. Position p means between tour[p - 1] and tour[p] (or tour[0] when p == size()).
+         */
+        public int cheapestInsertPosition(int v, ViewPoint vp, CollisionMatrix collisionMatrix) {
+            if (n == 0) return -1;
+            kernels.insertionDeltas(x, y, z, edge, n, vp.getX(), vp.getY(), vp.getZ(), dist, deltas);
+
+            int bestPos = -1;
+            double minDelta = Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                if (deltas[i] < minDelta &&
+                        collisionMatrix.allowed(idx[i], v) &&
+                        collisionMatrix.allowed(v, idx[(i + 1 < n) ? i + 1 : 0])) {
+                    minDelta = deltas[i];
+                    bestPos = i + 1;
+                }
+            }
+            return (bestPos >= 0 && fitsRange(minDelta)) ? bestPos : -1;
+        }
+
+        /**
+         * Like cheapestInsertPosition, but collects up to k cheapest feasible positions in
+         * ascending cost order into positions/costs. Returns how many were found.
+         */
+        public int cheapestInsertPositions(int v, ViewPoint vp, CollisionMatrix collisionMatrix,
+                                           int k, int[] positions, double[] costs) {
+            if (n == 0) return 0;
+            kernels.insertionDeltas(x, y, z, edge, n, vp.getX(), vp.getY(), vp.getZ(), dist, deltas);
+
+            int found = 0;
+            for (int i = 0; i < n; i++) {
+                double delta = deltas[i];
+                if (found == k && delta >= costs[k - 1]) continue;
+                if (!collisionMatrix.allowed(idx[i], v) || !collisionMatrix.allowed(v, idx[(i + 1 < n) ? i + 1 : 0])) continue;
+
+                // Insertion sort into the k best
+                int j = (found < k) ? found++ : k - 1;
+                while (j > 0 && costs[j - 1] > delta) {
+                    costs[j] = costs[j - 1];
+                    positions[j] = positions[j - 1];
+                    j--;
+                }
+                costs[j] = delta;
+                positions[j] = i + 1;
+            }
+            return found;
+        }
+
+        // Mirrors List.add(pos, vp) on the tour
+        public void insert(int pos, int v, ViewPoint vp) {
+            if (n == idx.length) {
+                int capacity = idx.length * 2;
+                idx = Arrays.copyOf(idx, capacity);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                z = Arrays.copyOf(z, capacity);
+                edge = Arrays.copyOf(edge, capacity);
+                dist = new double[capacity];
+                deltas = new double[capacity];
+            }
+            System.arraycopy(idx, pos, idx, pos + 1, n - pos);
+            System.arraycopy(x, pos, x, pos + 1, n - pos);
+            System.arraycopy(y, pos, y, pos + 1, n - pos);
+            System.arraycopy(z, pos, z, pos + 1, n - pos);
+            System.arraycopy(edge, pos, edge, pos + 1, n - pos);
+            edge[pos] = 0.0;
+            idx[pos] = v;
+            x[pos] = vp.getX();
+            y[pos] = vp.getY();
+            z[pos] = vp.getZ();
+            n++;
+            updateEdge(pos - 1);
+            updateEdge(pos);
+        }
+
+        private void updateEdge(int i) {
+            int j = (i + 1 < n) ? i + 1 : 0;
+            double dx = x[i] - x[j];
+            double dy = y[i] - y[j];
+            double dz = z[i] - z[j];
+            double e = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            length += e - edge[i];
+            edge[i] = e;
+        }
+    }
+
+    /**
+     * Best-insertion cache for greedy construction: for every candidate viewpoint the k cheapest
+     * feasible insertion edges (k >= 2, so best and second-best are always known) and their costs.
+     *
+     * Edges are identified by their from-node (edge u = u -> next(u)), so inserting w after u only
+     * changes edge u and adds edge w; all other cached entries stay valid. After an insertion only
+     * candidates that had edge u cached are rescanned, every other candidate just offers the two
+     * new edges to its list.
+     */
+    static class InsertionCache {
+        private final int k;
+        private final int[] fromNode; // [c * k + j], ascending cost
+        private final double[] cost;  // [c * k + j]
+        private final int[] count;    // cached entries per candidate
+        private final int[] positions;
+        private final double[] costs;
+        private long rescans = 0;
+        private long patches = 0;
+
+        public InsertionCache(int numViewPoints, int k) {
+            this.k = Math.max(2, k);
+            this.fromNode = new int[numViewPoints * this.k];
+            this.cost = new double[numViewPoints * this.k];
+            this.count = new int[numViewPoints];
+            this.positions = new int[this.k];
+            this.costs = new double[this.k];
+        }
+
+        public int count(int c) { return count[c]; }
+        public int fromNode(int c, int j) { return fromNode[c * k + j]; }
+        public double cost(int c, int j) { return cost[c * k + j]; }
+        public long getRescans() { return rescans; }
+        public long getPatches() { return patches; }
+
+        // Copies the cached costs of candidate c into out (ascending), returns how many
+        public int costs(int c, double[] out) {
+            int n = Math.min(count[c], out.length);
+            System.arraycopy(cost, c * k, out, 0, n);
+            return n;
+        }
+
+        // Full scan of all tour edges for candidate c
+        public void rescan(int c, CompiledInstance instance, TourArrays tour) {
+            int found = tour.cheapestInsertPositions(c, instance.getViewPoint(c), instance.getCollisionMatrix(),
+                    k, positions, costs);
+            for (int j = 0; j < found; j++) {
+                fromNode[c * k + j] = tour.node(positions[j] - 1);
+                cost[c * k + j] = costs[j];
+            }
+            count[c] = found;
+            rescans++;
+        }
+
+        /**
+         * Updates the cache after w was inserted between u and next.
+         */
+        public void onInsert(int u, int w, int next, boolean[] active,
+                             CompiledInstance instance, TourArrays tour) {
+            CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+            ViewPoint vu = instance.getViewPoint(u);
+            ViewPoint vw = instance.getViewPoint(w);
+            ViewPoint vn = instance.getViewPoint(next);
+            double edgeUW = vu.distanceTo(vw);
+            double edgeWN = vw.distanceTo(vn);
+
+            for (int c = 0; c < active.length; c++) {
+                if (!active[c]) continue;
+
+                boolean stale = false;
+                for (int j = 0; j < count[c]; j++) {
+                    if (fromNode[c * k + j] == u) {
+                        stale = true;
+                        break;
+                    }
+                }
+                if (stale) {
+                    rescan(c, instance, tour);
+                    continue;
+                }
+
+                ViewPoint vc = instance.getViewPoint(c);
+                if (collisionMatrix.allowed(u, c) && collisionMatrix.allowed(c, w)) {
+                    offer(c, u, vu.distanceTo(vc) + vc.distanceTo(vw) - edgeUW);
+                }
+                if (collisionMatrix.allowed(w, c) && collisionMatrix.allowed(c, next)) {
+                    offer(c, w, vw.distanceTo(vc) + vc.distanceTo(vn) - edgeWN);
+                }
+                patches++;
+            }
+        }
+
+        private void offer(int c, int from, double delta) {
+            int base = c * k;
+            int n = count[c];
+            if (n == k && delta >= cost[base + k - 1]) return;
+
+            int j = (n < k) ? n++ : k - 1;
+            while (j > 0 && cost[base + j - 1] > delta) {
+                cost[base + j] = cost[base + j - 1];
+                fromNode[base + j] = fromNode[base + j - 1];
+                j--;
+            }
+            cost[base + j] = delta;
+            fromNode[base + j] = from;
+            count[c] = n;
+        }
+    }
+
+    // ==================== Construction Strategies ====================
+
+    /**
+     * Decides which viewpoint greedy construction inserts next. Each candidate is scored from
+     * its coverage gain (samples below the coverage threshold it sees), the mean precision of those covers and
+     * its cheapest feasible insertion costs; the highest score wins and goes to its cheapest position.
+     */
+    interface ConstructionStrategy {
+        String name();
+
+        // Number of cheapest insertion costs score() looks at
+        default int positionsNeeded() { return 1; }
+
+        default boolean usesPrecision() { return false; }
+
+        /**
+         * costs[0 .. numCosts) are the cheapest feasible insertion deltas in ascending order
+         * (numCosts >= 1). precision is 0 unless usesPrecision() is true.
+         */
+        double score(int gain, double precision, double[] costs, int numCosts);
+    }
+
+    /**
+     * Original behaviour: most new coverage, distance only decides the position.
+     */
+    static class MaxCoverageStrategy implements ConstructionStrategy {
+        public String name() { return "max-coverage"; }
+
+        public double score(int gain, double precision, double[] costs, int numCosts) {
+            return gain;
+        }
+    }
+
+    /**
+     * Coverage gain per unit of detour.
+     */
+    static class GainPerDistanceStrategy implements ConstructionStrategy {
+        public String name() { return "gain-per-distance"; }
+
+        public double score(int gain, double precision, double[] costs, int numCosts) {
+            return gain / (Math.max(costs[0], 0.0) + 1.0);
+        }
+    }
+
+    /**
+     * Coverage gain weighted by how good the precision of the new covers is, scaled into
+     * [1, 2] by the instance's precision range.
+     */
+    static class PrecisionWeightedStrategy implements ConstructionStrategy {
+        private final double minPrecision;
+        private final double range;
+
+        public PrecisionWeightedStrategy(CompiledInstance instance) {
+            this.minPrecision = instance.getMinPrecision();
+            this.range = Math.max(instance.getMaxPrecision() - minPrecision, 1e-9);
+        }
+
+        public String name() { return "precision"; }
+        public boolean usesPrecision() { return true; }
+
+        public double score(int gain, double precision, double[] costs, int numCosts) {
+            return gain * (1.0 + (precision - minPrecision) / range);
+        }
+    }
+
+    /**
+     * Regret-k: gain per distance, boosted for candidates whose alternatives to the best position
+     * are much more expensive (or missing), so they are placed before their good slot disappears.
+     * The boost is 1 + mean regret / (k-th cost), i.e. between 1 and 2.
+     */
+    static class RegretStrategy implements ConstructionStrategy {
+        private final int k;
+
+        public RegretStrategy(int k) {
+            this.k = Math.max(2, k);
+        }
+
+        public String name() { return "regret-" + k; }
+        public int positionsNeeded() { return k; }
+
+        public double score(int gain, double precision, double[] costs, int numCosts) {
+            double best = Math.max(costs[0], 0.0);
+            double boost = 2.0; // no alternative position at all
+            if (numCosts >= k) {
+                double regret = 0.0;
+                for (int j = 1; j < k; j++) {
+                    regret += costs[j] - costs[0];
+                }
+                regret /= (k - 1);
+                boost = 1.0 + regret / (regret + best + 1.0);
+            }
+            return gain / (best + 1.0) * boost;
+        }
+    }
+
+    /**
+     * Creates a strategy from its name: max-coverage, gain-per-distance, precision or regret-k
+     * (plain "regret" is regret-3).
+     */
+    private static ConstructionStrategy createStrategy(String name, CompiledInstance instance) {
+        checkStrategyName(name);
+        if (name.equals("gain-per-distance")) return new GainPerDistanceStrategy();
+        if (name.equals("precision")) return new PrecisionWeightedStrategy(instance);
+        if (name.startsWith("regret")) {
+            return new RegretStrategy(name.equals("regret") ? 3 : Integer.parseInt(name.substring("regret-".length())));
+        }
+        return new MaxCoverageStrategy();
+    }
+
+    // Throws IllegalArgumentException for names createStrategy does not know
+    private static void checkStrategyName(String name) {
+        if (name.equals("max-coverage") || name.equals("gain-per-distance") || name.equals("precision")
+                || name.equals("regret") || name.matches("regret-[0-9]{1,6}")) {
+            return;
+        }
+        throw new IllegalArgumentException("Unknown construction strategy '" + name +
+                "', known: max-coverage, gain-per-distance, precision, regret-<k>");
+    }
+
+    // Throws IllegalArgumentException unless value is one of the known choices of option
+    private static void checkChoice(String option, String value, String... known) {
+        if (Arrays.asList(known).contains(value)) return;
+        throw new IllegalArgumentException("Unknown " + option + " value '" + value +
+                "', known: " + String.join(", ", known));
+    }
+
+    // ==================== JSON Parsing ====================
+
+    private static Map<String, ViewPoint> parseViewPoints(String input) {
+        // Keep input order: position in the viewpoints array is the collision matrix index
+        Map<String, ViewPoint> viewPoints = new LinkedHashMap<>();
+        try {
+            int vpStart = input.indexOf("\"viewpoints\"");
+            if (vpStart == -1) return viewPoints;
+
+            int arrayStart = input.indexOf("[", vpStart);
+            int arrayEnd = findMatchingBracket(input, arrayStart);
+            String vpArray = input.substring(arrayStart, arrayEnd + 1);
+
+            int pos = 1;
+            while (pos < vpArray.length()) {
+                int objStart = vpArray.indexOf("{", pos);
+                if (objStart == -1) break;
+
+                int objEnd = findMatchingBrace(vpArray, objStart);
+                String vpObj = vpArray.substring(objStart, objEnd + 1);
+
+                // Parse viewpoint
+                String id = internId(extractStringValue(vpObj, "\"id\""));
+                boolean mandatory = vpObj.contains("\"is_mandatory\": true");
+
+                // Parse coordinates
+                int coordStart = vpObj.indexOf("\"coordinates\"");
+                int coordObjStart = vpObj.indexOf("{", coordStart);
+                int coordObjEnd = findMatchingBrace(vpObj, coordObjStart);
+                String coordObj = vpObj.substring(coordObjStart, coordObjEnd + 1);
+
+                double x = extractDouble(coordObj, "\"x\"");
+                double y = extractDouble(coordObj, "\"y\"");
+                double z = extractDouble(coordObj, "\"z\"");
+
+                ViewPoint vp = new ViewPoint(id, x, y, z, mandatory);
+
+                // Parse precision map
+                int precStart = vpObj.indexOf("\"precision\"");
+                if (precStart != -1) {
+                    int precObjStart = vpObj.indexOf("{", precStart);
+                    int precObjEnd = findMatchingBrace(vpObj, precObjStart);
+                    String precObj = vpObj.substring(precObjStart, precObjEnd + 1);
+
+                    // Extract all angle:precision pairs
+                    // Format: { "a1": -123.45, "a2": -678.90 }
+                    String[] parts = precObj.split(",");
+                    for (String part : parts) {
+                        if (part.contains(":")) {
+                            // Extract angle ID between quotes
+                            int firstQuote = part.indexOf("\"");
+                            if (firstQuote >= 0) {
+                                int secondQuote = part.indexOf("\"", firstQuote + 1);
+                                if (secondQuote > firstQuote) {
+                                    String angleId = internId(part.substring(firstQuote + 1, secondQuote));
+                                    vp.addPrecision(angleId, extractDoubleFromPair(part));
+                                }
+                            }
+                        }
+                    }
+                }
+
+                viewPoints.put(id, vp);
+                pos = objEnd + 1;
+            }
+        } catch (Exception e) {
+            System.err.println("Error parsing viewpoints: " + e.getMessage());
+            e.printStackTrace(System.err);
+        }
+        System.err.println("Parsed " + viewPoints.size() + " viewpoints");
+        return viewPoints;
+    }
+
+    private static Map<String, SamplePoint> parseSamplePoints(String json) {
+        Map<String, SamplePoint> samplePoints = new LinkedHashMap<>();
+        try {
+            int spStart = json.indexOf("\"sample_points\"");
+            if (spStart == -1) return samplePoints;
+
+            int arrayStart = json.indexOf("[", spStart);
+            int arrayEnd = findMatchingBracket(json, arrayStart);
+            String spSection = json.substring(arrayStart, arrayEnd + 1);
+
+            int pos = 1;
+            while (pos < spSection.length()) {
+                int objStart = spSection.indexOf("{", pos);
+                if (objStart == -1) break;
+
+                int objEnd = findMatchingBrace(spSection, objStart);
+                String spObj = spSection.substring(objStart, objEnd + 1);
+
+                String id = internId(extractStringValue(spObj, "\"id\""));
+
+                // Parse coordinates
+                int coordStart = spObj.indexOf("\"coordinates\"");
+                int coordObjStart = spObj.indexOf("{", coordStart);
+                int coordObjEnd = findMatchingBrace(spObj, coordObjStart);
+                String coordObj = spObj.substring(coordObjStart, coordObjEnd + 1);
+
+                double x = extractDouble(coordObj, "\"x\"");
+                double y = extractDouble(coordObj, "\"y\"");
+                double z = extractDouble(coordObj, "\"z\"");
+
+                SamplePoint sp = new SamplePoint(id, x, y, z);
+
+                // Parse covering pairs
+                int cpStart = spObj.indexOf("\"covering_pairs\"");
+                if (cpStart != -1) {
+                    int cpArrayStart = spObj.indexOf("[", cpStart);
+                    int cpArrayEnd = findMatchingBracket(spObj, cpArrayStart);
+                    String cpArray = spObj.substring(cpArrayStart, cpArrayEnd + 1);
+
+                    int cpPos = 1;
+                    while (cpPos < cpArray.length()) {
+                        int pairStart = cpArray.indexOf("[", cpPos);
+                        if (pairStart == -1) break;
+
+                        int pairEnd = cpArray.indexOf("]", pairStart);
+                        String pair = cpArray.substring(pairStart + 1, pairEnd);
+
+                        String[] parts = pair.split(",");
+                        if (parts.length >= 2) {
+                            String vpId = internId(parts[0].replace("\"", "").trim());
+                            String angleId = internId(parts[1].replace("\"", "").trim());
+                            sp.addCoveringPair(vpId, angleId);
+                        }
+
+                        cpPos = pairEnd + 1;
+                    }
+                }
+
+                samplePoints.put(id, sp);
+                pos = objEnd + 1;
+            }
+        } catch (Exception e) {
+            System.err.println("Error parsing sample points: " + e.getMessage());
+            e.printStackTrace(System.err);
+        }
+        System.err.println("Parsed " + samplePoints.size() + " sample points");
+        return samplePoints;
+    }
+
+    /**
+     * Parses the collision matrix straight from the input text into bits, without copying the
+     * array or splitting rows into strings (the text of a large matrix dwarfs everything else).
+     */
+    private static CollisionMatrix parseCollisionMatrix(String input) {
+        try {
+            int cmStart = input.indexOf("\"collision_matrix\"");
+            if (cmStart == -1) return new CollisionMatrix(0, 0);
+
+            int arrayStart = input.indexOf("[", cmStart);
+            int arrayEnd = findMatchingBracket(input, arrayStart);
+
+            // Count rows and the longest row first, then fill the bits in a second pass
+            int numRows = 0, columns = 0;
+            for (int pos = input.indexOf("[", arrayStart + 1); pos != -1 && pos < arrayEnd;
+                 pos = input.indexOf("[", pos + 1)) {
+                int rowEnd = input.indexOf("]", pos);
+                int values = 1;
+                for (int i = pos + 1; i < rowEnd; i++) {
+                    if (input.charAt(i) == ',') values++;
+                }
+                columns = Math.max(columns, values);
+                numRows++;
+                pos = rowEnd;
+            }
+
+            CollisionMatrix matrix = new CollisionMatrix(numRows, columns);
+            int row = 0;
+            for (int pos = input.indexOf("[", arrayStart + 1); pos != -1 && pos < arrayEnd;
+                 pos = input.indexOf("[", pos + 1)) {
+                int rowEnd = input.indexOf("]", pos);
+                int column = 0;
+                int valueStart = pos + 1;
+                for (int i = pos + 1; i <= rowEnd; i++) {
+                    if (i < rowEnd && input.charAt(i) != ',') continue;
+                    if (parseIntValue(input, valueStart, i) == 1) matrix.set(row, column, true);
+                    column++;
+                    valueStart = i + 1;
+                }
+                row++;
+                pos = rowEnd;
+            }
+
+            System.err.println("Parsed collision matrix: " + matrix.size() + "x" + matrix.columns());
+            return matrix;
+        } catch (Exception e) {
+            System.err.println("Error parsing collision matrix: " + e.getMessage());
+            return new CollisionMatrix(0, 0);
+        }
+    }
+
+    // Integer.parseInt of input[from, to) with surrounding whitespace, without a substring
+    private static int parseIntValue(String input, int from, int to) {
+        while (from < to && Character.isWhitespace(input.charAt(from))) from++;
+        while (to > from && Character.isWhitespace(input.charAt(to - 1))) to--;
+        return Integer.parseInt(input, from, to, 10);
+    }
+
+    /**
+     * Parses the "directions" array into unit vectors (the input's axis directions are not
+     * normalised). Returns an empty array if the key is missing.
+     */
+    private static double[][] parseDirections(String input) {
+        try {
+            int dirStart = input.indexOf("\"directions\"");
+            if (dirStart == -1) return new double[0][];
+
+            int arrayStart = input.indexOf("[", dirStart);
+            int arrayEnd = findMatchingBracket(input, arrayStart);
+            String dirArray = input.substring(arrayStart + 1, arrayEnd);
+
+            List<double[]> directions = new ArrayList<>();
+            int pos = 0;
+            while (pos < dirArray.length()) {
+                int rowStart = dirArray.indexOf("[", pos);
+                if (rowStart == -1) break;
+                int rowEnd = dirArray.indexOf("]", rowStart);
+                String[] values = dirArray.substring(rowStart + 1, rowEnd).split(",");
+                double x = Double.parseDouble(values[0].trim());
+                double y = Double.parseDouble(values[1].trim());
+                double z = Double.parseDouble(values[2].trim());
+                double norm = Math.sqrt(x * x + y * y + z * z);
+                directions.add(norm > 0 ? new double[]{x / norm, y / norm, z / norm} : new double[3]);
+                pos = rowEnd + 1;
+            }
+            System.err.println("Parsed " + directions.size() + " directions");
+            return directions.toArray(new double[0][]);
+        } catch (Exception e) {
+            System.err.println("Error parsing directions: " + e.getMessage());
+            return new double[0][];
+        }
+    }
+
+    /**
+     * Parses a previously written solution (same format as outputSolution) into a Solution.
+     * Viewpoints that are not part of the current instance and repeated viewpoints are skipped,
+     * so the result may need repairSolution before it is feasible.
+     */
+    private static Solution parseSolution(String json, Map<String, ViewPoint> viewPoints) {
+        Solution solution = new Solution();
+        int skipped = 0;
+        try {
+            int seqStart = json.indexOf("\"sequence\"");
+            if (seqStart == -1) return solution;
+
+            int arrayStart = json.indexOf("[", seqStart);
+            int arrayEnd = findMatchingBracket(json, arrayStart);
+            String seqArray = json.substring(arrayStart, arrayEnd + 1);
+
+            Set<ViewPoint> seen = new HashSet<>();
+            int pos = 1;
+            while (pos < seqArray.length()) {
+                int objStart = seqArray.indexOf("{", pos);
+                if (objStart == -1) break;
+
+                int objEnd = findMatchingBrace(seqArray, objStart);
+                String entry = seqArray.substring(objStart, objEnd + 1);
+                pos = objEnd + 1;
+
+                String id = extractStringValue(entry, "\"id\"");
+                ViewPoint vp = viewPoints.get(id);
+                if (vp == null || !seen.add(vp)) {
+                    skipped++;
+                    continue;
+                }
+                solution.addViewPoint(vp);
+
+                // Parse angle list: [ "a1", "a13" ]
+                int angStart = entry.indexOf("\"angles\"");
+                if (angStart != -1) {
+                    int angArrayStart = entry.indexOf("[", angStart);
+                    int angArrayEnd = findMatchingBracket(entry, angArrayStart);
+                    String angArray = entry.substring(angArrayStart + 1, angArrayEnd);
+                    for (String part : angArray.split(",")) {
+                        String angleId = part.replace("\"", "").trim();
+                        if (!angleId.isEmpty()) {
+                            solution.addAngle(vp, angleId);
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error parsing solution: " + e.getMessage());
+            e.printStackTrace(System.err);
+        }
+        System.err.println("Parsed warm-start solution: " + solution.getTour().size() +
+                " viewpoints (" + skipped + " unknown or repeated entries skipped)");
+        return solution;
+    }
+
+    /**
+     * Parses a change set file:
+     * { "blocked_edges": [["v1", "v2"]], "opened_edges": [...],
+     *   "disabled_viewpoints": ["v5"], "sample_points": [ same format as the instance ] }
+     * All keys are optional.
+     */
+    private static ChangeSet parseChangeSet(String json) {
+        ChangeSet changes = new ChangeSet();
+        for (String[] edge : parseIdPairs(json, "\"blocked_edges\"")) {
+            changes.blockEdge(edge[0], edge[1]);
+        }
+        for (String[] edge : parseIdPairs(json, "\"opened_edges\"")) {
+            changes.openEdge(edge[0], edge[1]);
+        }
+        for (String id : parseStringArray(json, "\"disabled_viewpoints\"")) {
+            changes.disableViewPoint(id);
+        }
+        for (SamplePoint sp : parseSamplePoints(json).values()) {
+            changes.addSample(sp);
+        }
+        System.err.println("Parsed change set: " + changes.getBlockedEdges().size() + " blocked edges, " +
+                changes.getOpenedEdges().size() + " opened edges, " +
+                changes.getDisabledViewPoints().size() + " disabled viewpoints, " +
+                changes.getAddedSamples().size() + " added samples");
+        return changes;
+    }
+
+    // Parses [["a", "b"], ["c", "d"]] under the given key
+    private static List<String[]> parseIdPairs(String json, String key) {
+        List<String[]> pairs = new ArrayList<>();
+        int keyPos = json.indexOf(key);
+        if (keyPos == -1) return pairs;
+
+        int arrayStart = json.indexOf("[", keyPos);
+        int arrayEnd = findMatchingBracket(json, arrayStart);
+        String array = json.substring(arrayStart, arrayEnd + 1);
+
+        int pos = 1;
+        while (pos < array.length()) {
+            int pairStart = array.indexOf("[", pos);
+            if (pairStart == -1) break;
+
+            int pairEnd = array.indexOf("]", pairStart);
+            String[] parts = array.substring(pairStart + 1, pairEnd).split(",");
+            if (parts.length >= 2) {
+                pairs.add(new String[]{parts[0].replace("\"", "").trim(), parts[1].replace("\"", "").trim()});
+            }
+            pos = pairEnd + 1;
+        }
+        return pairs;
+    }
+
+    // Parses ["a", "b", "c"] under the given key
+    private static List<String> parseStringArray(String json, String key) {
+        List<String> values = new ArrayList<>();
+        int keyPos = json.indexOf(key);
+        if (keyPos == -1) return values;
+
+        int arrayStart = json.indexOf("[", keyPos);
+        int arrayEnd = findMatchingBracket(json, arrayStart);
+        for (String part : json.substring(arrayStart + 1, arrayEnd).split(",")) {
+            String value = part.replace("\"", "").trim();
+            if (!value.isEmpty()) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    // Helper methods
+    private static int findMatchingBracket(String str, int start) {
+        int count = 1;
+        for (int i = start + 1; i < str.length(); i++) {
+            if (str.charAt(i) == '[') count++;
+            else if (str.charAt(i) == ']') {
+                count--;
+                if (count == 0) return i;
+            }
+        }
+        return str.length() - 1;
+    }
+
+    private static int findMatchingBrace(String str, int start) {
+        int count = 1;
+        for (int i = start + 1; i < str.length(); i++) {
+            if (str.charAt(i) == '{') count++;
+            else if (str.charAt(i) == '}') {
+                count--;
+                if (count == 0) return i;
+            }
+        }
+        return str.length() - 1;
+    }
+
+    // In low-memory mode the many repeated viewpoint and angle ids share one String each
+    private static String internId(String id) {
+        return (lowMemory && id != null) ? id.intern() : id;
+    }
+
+    private static String extractStringValue(String json, String key) {
+        try {
+            int keyPos = json.indexOf(key);
+            if (keyPos == -1) return "";
+
+            int colonPos = json.indexOf(":", keyPos);
+            int quoteStart = json.indexOf("\"", colonPos);
+            int quoteEnd = json.indexOf("\"", quoteStart + 1);
+
+            return json.substring(quoteStart + 1, quoteEnd);
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static double extractDouble(String json, String key) {
+        try {
+            int keyPos = json.indexOf(key);
             if (keyPos == -1) return 0.0;
 
-            int colonPos = json.indexOf(":", keyPos);
-            int commaPos = json.indexOf(",", colonPos);
-            int bracePos = json.indexOf("}", colonPos);
+            int colonPos = json.indexOf(":", keyPos);
+            int commaPos = json.indexOf(",", colonPos);
+            int bracePos = json.indexOf("}", colonPos);
+
+            int endPos = (commaPos != -1 && commaPos < bracePos) ? commaPos : bracePos;
+            String value = json.substring(colonPos + 1, endPos).trim();
+
+            return Double.parseDouble(value);
+        } catch (Exception e) {
+            return 0.0;
+        }
+    }
+
+    private static double extractDoubleFromPair(String pair) {
+        try {
+            int colonPos = pair.indexOf(":");
+            if (colonPos == -1) return 0.0;
+
+            String value = pair.substring(colonPos + 1).trim();
+            value = value.replace("}", "").replace("]", "").trim();
+
+            return Double.parseDouble(value);
+        } catch (Exception e) {
+            return 0.0;
+        }
+    }
+
+    // ==================== Algorithm Implementation ====================
+
+    /**
+     * Range limit for the single tour built by construction and improvement. In fleet mode that
+     * tour is split afterwards, so it may use the range of the whole fleet.
+     */
+    private static double constructionRange() {
+        return maxTourLength * fleetSize;
+    }
+
+    // True once the running pipeline phase has used up its time budget
+    private static boolean phaseTimeUp() {
+        return System.currentTimeMillis() > phaseDeadline;
+    }
+
+    static class TimeLimitExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        TimeLimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private static void checkTimeLimit(String phase) {
+        long elapsed = System.currentTimeMillis() - startTime;
+        if (elapsed > timeLimitMs) {
+            System.err.println("Time limit at " + phase + ": " + elapsed / 1000.0 + "s");
+            if (!exitOnTimeLimit) {
+                throw new TimeLimitExceededException("time limit of " + timeLimitMs + " ms exceeded at " + phase);
+            }
+            System.exit(1);
+        }
+    }
+
+    private static Solution solveUAVProblem(String input) throws IOException {
+        return solveUAVProblem(new AtomicReference<>(input), null, null);
+    }
+
+    /**
+     * Solves the instance. If warmStartJson is given, the previous solution is parsed,
+     * repaired against the current instance and improved instead of running greedy construction.
+     * If changesJson is given as well, the previous solution is only repaired locally for the
+     * change set (see replanSolution); without a previous solution the changes are applied to
+     * the instance before solving. In low-memory mode rawInput is cleared once the instance
+     * is compiled, so the caller must not keep its own reference to the text.
+     */
+    private static Solution solveUAVProblem(AtomicReference<String> rawInput, String warmStartJson,
+                                            String changesJson) throws IOException {
+        checkTimeLimit("Start solve");
+        String input = rawInput.get();
+
+        // Phase 1: Parse
+        System.err.println("Phase 1: Parsing...");
+        progress.setPhase("parse");
+        Map<String, ViewPoint> viewPoints = parseViewPoints(input);
+        markMemory("viewpoints");
+        Map<String, SamplePoint> samplePoints = parseSamplePoints(input);
+        markMemory("sample points");
+        CollisionMatrix collisionMatrix = parseCollisionMatrix(input);
+        markMemory("collision matrix");
+        checkTimeLimit("After parsing");
+
+        if (geometryMode != null) {
+            // Phase 1a: Covering pairs from the direction vectors
+            System.err.println("Phase 1a: Geometric coverage model (" + geometryMode + ")...");
+            progress.setPhase("geometry");
+            GeometryModel model = new GeometryModel(parseDirections(input), coneDegrees, maxRange);
+            if (geometryMode.equals("derive")) {
+                applyDerivedPairs(viewPoints, samplePoints, model);
+            } else {
+                validateGeometry(viewPoints, samplePoints, model);
+            }
+            checkTimeLimit("After geometry");
+        }
+
+        // Compile into dense ids and the off-heap covering pair store
+        CompiledInstance instance = CompiledInstance.compile(viewPoints, samplePoints, collisionMatrix,
+                pairStorePath != null ? Paths.get(pairStorePath) : null);
+        markMemory("compiled instance");
+        if (lowMemory) {
+            for (ViewPoint vp : instance.getViewPoints()) {
+                vp.compactPrecision();
+            }
+            rawInput.set(null);
+            input = null;
+            markMemory("raw input released");
+        }
+        checkTimeLimit("After compiling");
+
+        ChangeSet changes = (changesJson != null) ? parseChangeSet(changesJson) : null;
+
+        Solution solution = null;
+        GraphAnalysis analysis = null; // not run when re-planning
+        if (warmStartJson != null && changes != null) {
+            // Phase 2: Re-plan the previous solution for the change set
+            System.err.println("Phase 2: Incremental re-planning...");
+            progress.setPhase("replan");
+            solution = parseSolution(warmStartJson, viewPoints);
+            Coverage coverage = computeCoverage(solution, instance);
+            progress.track(coverage);
+
+            ReplanResult result = replanSolution(solution, changes, instance, coverage);
+            System.err.println("Replan diff: removed=" + result.getRemovedViewPoints() +
+                    " added=" + result.getAddedViewPoints() + " angles=" + result.getAddedAngles().size());
+            checkTimeLimit("After re-planning");
+        } else if (warmStartJson != null) {
+            System.err.println("Phase 1b: Collision graph analysis...");
+            progress.setPhase("graph-analysis");
+            analysis = analyseCollisionGraph(instance);
+            checkTimeLimit("After graph analysis");
+
+            // Phase 2: Warm start from a previous solution
+            System.err.println("Phase 2: Warm start...");
+            progress.setPhase("warm-start");
+            solution = parseSolution(warmStartJson, viewPoints);
+            warmStartSolution(solution, viewPoints, instance);
+            checkTimeLimit("After warm start");
+        } else {
+            if (changes != null) {
+                applyChangeSet(changes, instance);
+            }
+            System.err.println("Phase 1b: Collision graph analysis...");
+            progress.setPhase("graph-analysis");
+            analysis = analyseCollisionGraph(instance);
+            checkTimeLimit("After graph analysis");
+        }
+
+        // Phase 2: Construction (unless warm-started or re-planned) and improvement phases
+        PipelineState state = new PipelineState(instance, solution);
+        state.replanned = warmStartJson != null && changes != null;
+        runPipeline(state, parsePipeline(pipelineSpec));
+        solution = state.solution;
+        if (analysis != null) {
+            solution.setCoverableSamples(instance.numSamples() - analysis.infeasibleSamples.size());
+        }
+
+        // Phase 3: Calculate metrics
+        System.err.println("Phase 3: Calculating metrics...");
+        progress.setPhase("metrics");
+        calculateMetrics(solution, viewPoints);
+
+        // Phase 4: Validate solution
+        System.err.println("Phase 4: Validating solution...");
+        progress.setPhase("validation");
+        boolean isValid = validateSolution(solution, instance);
+        if (!isValid) {
+            System.err.println("WARNING: Solution does not satisfy all constraints!");
+        }
+        checkTimeLimit("After validation");
+
+        System.err.println("Solution: " + solution.getTour().size() + " viewpoints, " +
+                "distance=" + String.format("%.2f", solution.getTotalDistance()) +
+                ", precision=" + String.format("%.2f", solution.getTotalPrecision()) +
+                (solution.getFleetTours() != null
+                        ? ", makespan=" + String.format("%.2f", solution.getMakespan()) : ""));
+
+        writeCheckpoint(solution);
+        if (memoryProbe != null) {
+            memoryProbe.mark("solver");
+            memoryProbe.report(instance);
+        }
+        return solution;
+    }
+
+    // ==================== Solver Pipeline ====================
+
+    /**
+     * What the phases of one pipeline run share: the instance, the incumbent (null until a
+     * construction phase produced one) and the coverage counters construction left behind.
+     */
+    static class PipelineState {
+        final CompiledInstance instance;
+        Solution solution;
+        Coverage coverage;     // kept in step with the solution by construction and repair, else null
+        boolean constructed;   // the solution was built by a construction phase of this run
+        boolean replanned;     // the solution came from incremental re-planning
+
+        PipelineState(CompiledInstance instance, Solution solution) {
+            this.instance = instance;
+            this.solution = solution;
+        }
+
+        // Coverage of the current solution, recomputed if no phase kept it up to date
+        Coverage coverage() {
+            if (coverage == null) coverage = computeCoverage(solution, instance);
+            return coverage;
+        }
+
+        // Coverage repair only makes sense on a heuristic construction of this run
+        boolean repairable() {
+            return solution != null && constructed && !solution.isProvenOptimal();
+        }
+    }
+
+    interface PhaseBody {
+        void run(PipelineState state, long budgetMs) throws IOException;
+    }
 
-            int endPos = (commaPos != -1 && commaPos < bracePos) ? commaPos : bracePos;
-            String value = json.substring(colonPos + 1, endPos).trim();
+    /**
+     * A named pipeline phase: applies() says whether it has anything to do in the current state,
+     * run() gets the phase's time budget (long loops also stop at phaseTimeUp()).
+     */
+    static class PipelinePhase {
+        private final String name;
+        private final String description;
+        private final java.util.function.Predicate<PipelineState> applies;
+        private final PhaseBody body;
+
+        PipelinePhase(String name, String description, java.util.function.Predicate<PipelineState> applies,
+                      PhaseBody body) {
+            this.name = name;
+            this.description = description;
+            this.applies = applies;
+            this.body = body;
+        }
 
-            return Double.parseDouble(value);
-        } catch (Exception e) {
-            return 0.0;
+        public String getName() { return name; }
+        public String getDescription() { return description; }
+        public boolean applies(PipelineState state) { return applies.test(state); }
+        public void run(PipelineState state, long budgetMs) throws IOException { body.run(state, budgetMs); }
+    }
+
+    // Registry of the phases --pipeline can name, in their usual order
+    private static final Map<String, PipelinePhase> PHASES = registerPhases();
+
+    private static Map<String, PipelinePhase> registerPhases() {
+        Map<String, PipelinePhase> phases = new LinkedHashMap<>();
+        List<PipelinePhase> list = Arrays.asList(
+                new PipelinePhase("exact", "Exact branch-and-bound",
+                        state -> state.solution == null && useExactSolver(state.instance),
+                        (state, budgetMs) -> {
+                            Solution solution = exactSolve(state.instance, budgetMs);
+                            if (solution != null) {
+                                state.solution = solution;
+                                state.constructed = true;
+                            }
+                        }),
+                new PipelinePhase("dominance", "Dominance reduction",
+                        state -> state.solution == null,
+                        (state, budgetMs) -> reduceDominated(state.instance)),
+                new PipelinePhase("greedy", "Greedy construction",
+                        state -> state.solution == null,
+                        (state, budgetMs) -> {
+                            state.coverage = new Coverage(state.instance.numSamples());
+                            state.solution = greedyConstruction(state.instance,
+                                    createStrategy(constructionStrategy, state.instance), state.coverage);
+                            state.constructed = true;
+                        }),
+                new PipelinePhase("improve-coverage", "Coverage improvement",
+                        PipelineState::repairable,
+                        (state, budgetMs) -> {
+                            Coverage coverage = state.coverage();
+                            improveCoverage(state.solution, state.instance, coverage);
+                            System.err.println("After improvement: " + state.solution.getTour().size() +
+                                    " viewpoints, " + coverage.getSatisfied() + "/" + state.instance.numSamples() +
+                                    " samples fully covered");
+                        }),
+                new PipelinePhase("swap", "Swap-based improvement",
+                        PipelineState::repairable,
+                        (state, budgetMs) -> swapForCoverage(state.solution, state.instance, state.coverage())),
+                new PipelinePhase("eliminate", "Redundancy elimination",
+                        state -> state.solution != null && !state.replanned,
+                        (state, budgetMs) -> {
+                            eliminateRedundant(state.solution, state.instance,
+                                    computeCoverage(state.solution, state.instance));
+                            state.coverage = null;
+                        }),
+                new PipelinePhase("two-opt", "2-opt tour improvement",
+                        state -> state.solution != null && !state.replanned && !state.solution.isProvenOptimal(),
+                        (state, budgetMs) -> {
+                            double before = tourLength(state.solution.getTour());
+                            int moves = twoOpt(state.solution, state.instance);
+                            System.err.println("2-opt: " + moves + " moves, tour length " +
+                                    String.format("%.2f -> %.2f", before, tourLength(state.solution.getTour())));
+                        }),
+                new PipelinePhase("fleet", "Fleet planning",
+                        state -> state.solution != null && fleetSize > 1,
+                        (state, budgetMs) -> {
+                            System.err.println("Fleet planning for " + fleetSize + " UAVs (" + fleetObjective + ")");
+                            planFleet(state.solution, state.instance);
+                            state.coverage = null;
+                        }));
+        for (PipelinePhase phase : list) {
+            phases.put(phase.getName(), phase);
         }
+        return phases;
     }
 
-    private static double extractDoubleFromPair(String pair) {
+    // One entry of a pipeline spec: a registered phase and its share of the remaining time
+    static class PipelineStep {
+        final PipelinePhase phase;
+        final double share;
+
+        PipelineStep(PipelinePhase phase, double share) {
+            this.phase = phase;
+            this.share = share;
+        }
+    }
+
+    /**
+     * Parses "name[:share],..." - share is the fraction of the time remaining when the phase
+     * starts (default 1, i.e. everything that is left).
+     */
+    private static List<PipelineStep> parsePipeline(String spec) {
+        List<PipelineStep> steps = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            int colon = entry.indexOf(':');
+            String name = (colon == -1) ? entry : entry.substring(0, colon).trim();
+            double share = 1.0;
+            if (colon != -1) {
+                try {
+                    share = Double.parseDouble(entry.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Malformed pipeline share in '" + entry + "'", e);
+                }
+            }
+            PipelinePhase phase = PHASES.get(name);
+            if (phase == null) {
+                throw new IllegalArgumentException("Unknown pipeline phase '" + name + "', known: " + PHASES.keySet());
+            }
+            if (!(share > 0.0 && share <= 1.0)) {
+                throw new IllegalArgumentException("Pipeline share of " + name + " must be in (0, 1]: " + share);
+            }
+            steps.add(new PipelineStep(phase, share));
+        }
+        return steps;
+    }
+
+    /**
+     * Runs the steps in order, skipping phases that do not apply, and reports per-phase metrics:
+     * time against budget, tour size, satisfied samples and objective afterwards. Greedy
+     * construction is added as a fallback if no phase produced a solution.
+     */
+    private static void runPipeline(PipelineState state, List<PipelineStep> steps) throws IOException {
+        List<String> metrics = new ArrayList<>();
+        List<PipelineStep> plan = new ArrayList<>(steps);
+        for (int i = 0; i < plan.size(); i++) {
+            PipelinePhase phase = plan.get(i).phase;
+            if (!phase.applies(state)) {
+                metrics.add(String.format("%-16s skipped", phase.getName()));
+            } else {
+                long start = System.currentTimeMillis();
+                long budget = (long) ((timeLimitMs - (start - startTime)) * plan.get(i).share);
+                System.err.println("Phase 2 (" + phase.getName() + "): " + phase.getDescription() +
+                        ", budget " + budget + " ms...");
+                progress.setPhase(phase.getName());
+                phaseDeadline = start + budget;
+                try {
+                    phase.run(state, budget);
+                } finally {
+                    phaseDeadline = Long.MAX_VALUE;
+                }
+                checkTimeLimit("After " + phase.getName());
+
+                long elapsed = System.currentTimeMillis() - start;
+                String line;
+                if (state.solution == null) {
+                    line = String.format("%-16s %6d ms of %d, no solution", phase.getName(), elapsed, budget);
+                } else {
+                    Coverage coverage = computeCoverage(state.solution, state.instance);
+                    line = String.format("%-16s %6d ms of %d, %d viewpoints, %d/%d satisfied, objective %.2f",
+                            phase.getName(), elapsed, budget, state.solution.getTour().size(),
+                            coverage.getSatisfied(), state.instance.numSamples(), pipelineObjective(state.solution));
+                    // Progress events follow the incumbent the phase left behind
+                    progress.track(state.coverage != null ? state.coverage : coverage);
+                    progress.publish(state.solution);
+                }
+                System.err.println("  " + line);
+                metrics.add(line);
+            }
+
+            if (i == plan.size() - 1 && state.solution == null) {
+                System.err.println("Pipeline produced no solution, falling back to greedy construction");
+                plan.add(new PipelineStep(PHASES.get("greedy"), 1.0));
+            }
+        }
+
+        System.err.println("Pipeline metrics:");
+        for (String line : metrics) {
+            System.err.println("  " + line);
+        }
+    }
+
+    // Tour length minus precision of the selected angles (single tour, before metrics are calculated)
+    private static double pipelineObjective(Solution solution) {
+        double precision = 0.0;
+        for (Map.Entry<ViewPoint, Set<String>> entry : solution.getSelectedAngles().entrySet()) {
+            for (String angleId : entry.getValue()) {
+                precision += entry.getKey().getPrecision(angleId);
+            }
+        }
+        return tourLength(solution.getTour()) - precision;
+    }
+
+    // ==================== Progress Reporting ====================
+
+    /**
+     * Receives progress events from the sampler thread, see startProgress.
+     */
+    interface ProgressListener extends Closeable {
+        void onProgress(ProgressEvent event);
+
+        @Override
+        default void close() {}
+    }
+
+    /**
+     * One progress sample: elapsed time, phase, incumbent and move rate. Incumbent fields are
+     * NaN / -1 until the solver has published one.
+     */
+    static class ProgressEvent {
+        final long elapsedMs;
+        final String phase;
+        final double distance, precision;
+        final int viewPoints, satisfied, numSamples;
+        final long moves;
+        final double movesPerSecond;
+
+        ProgressEvent(long elapsedMs, String phase, double distance, double precision,
+                      int viewPoints, int satisfied, int numSamples, long moves, double movesPerSecond) {
+            this.elapsedMs = elapsedMs;
+            this.phase = phase;
+            this.distance = distance;
+            this.precision = precision;
+            this.viewPoints = viewPoints;
+            this.satisfied = satisfied;
+            this.numSamples = numSamples;
+            this.moves = moves;
+            this.movesPerSecond = movesPerSecond;
+        }
+
+        double objective() { return distance - precision; }
+        double completeness() { return numSamples > 0 && satisfied >= 0 ? (double) satisfied / numSamples : 0.0; }
+
+        String toJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"elapsed_ms\":").append(elapsedMs);
+            sb.append(",\"phase\":\"").append(phase).append('"');
+            if (!Double.isNaN(distance)) {
+                sb.append(String.format(Locale.ROOT, ",\"objective\":%.2f,\"distance\":%.2f,\"precision\":%.2f",
+                        objective(), distance, precision));
+                sb.append(",\"viewpoints\":").append(viewPoints);
+            }
+            if (satisfied >= 0) {
+                sb.append(",\"satisfied\":").append(satisfied).append(",\"samples\":").append(numSamples);
+                sb.append(String.format(Locale.ROOT, ",\"coverage\":%.4f", completeness()));
+            }
+            sb.append(",\"moves\":").append(moves);
+            sb.append(String.format(Locale.ROOT, ",\"moves_per_s\":%.1f}", movesPerSecond));
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Progress state shared between the solver thread (single writer) and the sampler thread.
+     * The sampler never touches solver data: it raises a request flag, and the solver publishes
+     * a fresh incumbent as one immutable snapshot at its next maybeCheckpoint.
+     */
+    static class Progress {
+        /** Incumbent figures published together, so a sample never mixes two incumbents. */
+        static final class Snapshot {
+            static final Snapshot EMPTY = new Snapshot(Double.NaN, Double.NaN, 0, -1, 0);
+
+            final double distance, precision;
+            final int viewPoints, satisfied, numSamples;
+
+            Snapshot(double distance, double precision, int viewPoints, int satisfied, int numSamples) {
+                this.distance = distance;
+                this.precision = precision;
+                this.viewPoints = viewPoints;
+                this.satisfied = satisfied;
+                this.numSamples = numSamples;
+            }
+        }
+
+        private volatile String phase = "start";
+        private volatile long moves;
+        private volatile boolean requested;
+        private volatile Coverage coverage;
+
+        private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+        // Phase name -> start time, written and read on the solver thread only
+        private final Map<String, Long> phaseStarts = new LinkedHashMap<>();
+        // Last published incumbent, republished at every phase boundary (solver thread only)
+        private Solution incumbent;
+
+        void setPhase(String phase) {
+            // Phases that change the incumbent without reporting moves (elimination, fleet)
+            // would otherwise leave the previous figures in the events
+            if (incumbent != null) publish(incumbent);
+            this.phase = phase;
+            this.requested = true;
+            phaseStarts.putIfAbsent(phase, System.currentTimeMillis());
+        }
+
+        /** Milliseconds spent per phase so far, in phase order (the last one up to now). */
+        Map<String, Long> phaseTimings() {
+            Map<String, Long> timings = new LinkedHashMap<>();
+            String last = null;
+            long lastStart = 0;
+            for (Map.Entry<String, Long> entry : phaseStarts.entrySet()) {
+                if (last != null) timings.put(last, entry.getValue() - lastStart);
+                last = entry.getKey();
+                lastStart = entry.getValue();
+            }
+            if (last != null) timings.put(last, System.currentTimeMillis() - lastStart);
+            return timings;
+        }
+
+        /** Starts over for the next solve in the same JVM (regression and watch mode). */
+        void reset() {
+            phase = "start";
+            moves = 0;
+            coverage = null;
+            incumbent = null;
+            snapshot = Snapshot.EMPTY;
+            phaseStarts.clear();
+        }
+
+        // Coverage counters of the current phase, read on the solver thread only
+        void track(Coverage coverage) {
+            this.coverage = coverage;
+        }
+
+        // Only the solver thread writes, so the non-atomic increment is safe
+        void countMove() {
+            moves++;
+        }
+
+        void publishIfRequested(Solution solution) {
+            if (!requested) return;
+            requested = false;
+            publish(solution);
+        }
+
+        void publish(Solution solution) {
+            incumbent = solution;
+            double totalPrecision = 0.0;
+            for (ViewPoint vp : solution.getTour()) {
+                for (String angleId : solution.getSelectedAngles().getOrDefault(vp, Collections.emptySet())) {
+                    totalPrecision += vp.getPrecision(angleId);
+                }
+            }
+            // Without tracked coverage (between phases) keep the last published counts
+            Snapshot previous = snapshot;
+            Coverage c = coverage;
+            snapshot = new Snapshot(tourLength(solution.getTour()), totalPrecision, solution.getTour().size(),
+                    c != null ? c.getSatisfied() : previous.satisfied,
+                    c != null ? c.size() : previous.numSamples);
+        }
+
+        ProgressEvent sample(long lastMoves, long intervalMs) {
+            requested = true;
+            long m = moves;
+            Snapshot s = snapshot;
+            return new ProgressEvent(System.currentTimeMillis() - startTime, phase, s.distance, s.precision,
+                    s.viewPoints, s.satisfied, s.numSamples, m, intervalMs > 0 ? (m - lastMoves) * 1000.0 / intervalMs : 0.0);
+        }
+    }
+
+    /** Writes every event as one JSON line and flushes, so readers can follow a live run. */
+    static class NdjsonProgressWriter implements ProgressListener {
+        private final PrintStream out;
+
+        NdjsonProgressWriter(OutputStream out) {
+            this.out = new PrintStream(new BufferedOutputStream(out), false);
+        }
+
+        @Override
+        public void onProgress(ProgressEvent event) {
+            out.println(event.toJson());
+            out.flush();
+        }
+
+        // Closes the file or socket stream underneath
+        @Override
+        public void close() {
+            out.close();
+        }
+    }
+
+    /**
+     * Opens the NDJSON progress target: "tcp://host:port" connects a socket, anything else is a file.
+     */
+    private static ProgressListener openProgressStream(String target) throws IOException {
+        if (target.startsWith("tcp://")) {
+            String address = target.substring("tcp://".length());
+            int colon = address.lastIndexOf(':');
+            java.net.Socket socket = new java.net.Socket(address.substring(0, colon),
+                    Integer.parseInt(address.substring(colon + 1)));
+            return new NdjsonProgressWriter(socket.getOutputStream());
+        }
+        return new NdjsonProgressWriter(Files.newOutputStream(Paths.get(target)));
+    }
+
+    /**
+     * Starts the daemon sampler thread that hands a ProgressEvent to every listener each
+     * progressIntervalMs. Returns the thread so that stopProgress can emit a final event.
+     */
+    private static Thread startProgress(List<ProgressListener> listeners) {
+        Thread sampler = new Thread(() -> {
+            long lastMoves = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(progressIntervalMs);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                ProgressEvent event = progress.sample(lastMoves, progressIntervalMs);
+                lastMoves = event.moves;
+                for (ProgressListener listener : listeners) {
+                    listener.onProgress(event);
+                }
+            }
+        }, "aads-progress");
+        sampler.setDaemon(true);
+        sampler.start();
+        return sampler;
+    }
+
+    private static void stopProgress(Thread sampler, List<ProgressListener> listeners, Solution solution,
+                                     boolean close) {
+        sampler.interrupt();
         try {
-            int colonPos = pair.indexOf(":");
-            if (colonPos == -1) return 0.0;
+            sampler.join(progressIntervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        progress.setPhase(solution != null ? "done" : "failed");
+        if (solution != null) progress.publishIfRequested(solution);
+        ProgressEvent event = progress.sample(progress.moves, 0);
+        for (ProgressListener listener : listeners) {
+            listener.onProgress(event);
+        }
+        if (close) closeProgress(listeners);
+    }
 
-            String value = pair.substring(colonPos + 1).trim();
-            value = value.replace("}", "").replace("]", "").trim();
+    private static void closeProgress(List<ProgressListener> listeners) {
+        for (ProgressListener listener : listeners) {
+            listener.close();
+        }
+    }
 
-            return Double.parseDouble(value);
-        } catch (Exception e) {
-            return 0.0;
+    // ==================== Warm Start & Checkpointing ====================
+
+    /**
+     * Turns a parsed previous solution into a feasible starting point and continues optimising it:
+     * repairs the tour against the current collision matrix, rebuilds coverage counts from the
+     * selected angles and then runs the usual coverage improvement.
+     */
+    private static void warmStartSolution(Solution solution,
+                                          Map<String, ViewPoint> viewPoints,
+                                          CompiledInstance instance) {
+        repairSolution(solution, viewPoints, instance);
+
+        Coverage coverage = computeCoverage(solution, instance);
+        progress.track(coverage);
+        System.err.println("Warm start: " + solution.getTour().size() + " viewpoints, " +
+                coverage.getSatisfied() + "/" + instance.numSamples() + " samples fully covered");
+
+        improveCoverage(solution, instance, coverage);
+        swapForCoverage(solution, instance, coverage);
+
+        System.err.println("After improvement: " + solution.getTour().size() + " viewpoints, " +
+                coverage.getSatisfied() + "/" + instance.numSamples() + " samples fully covered");
+    }
+
+    /**
+     * Makes a solution structurally feasible for the current instance:
+     * the mandatory viewpoint is moved to position 0, angles the viewpoint does not have are
+     * dropped, and the tour is walked in its original order, greedily keeping each viewpoint
+     * reachable from the last one kept. The viewpoints skipped that way (and any trailing ones
+     * that cannot close back to the start) are re-inserted at their cheapest valid position,
+     * or left out if there is none.
+     */
+    private static void repairSolution(Solution solution,
+                                       Map<String, ViewPoint> viewPoints,
+                                       CompiledInstance instance) {
+        List<ViewPoint> tour = solution.getTour();
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        Map<String, Integer> vpIndex = instance.getVpIndex();
+
+        ViewPoint mandatoryVP = null;
+        for (ViewPoint vp : viewPoints.values()) {
+            if (vp.isMandatory()) {
+                mandatoryVP = vp;
+                break;
+            }
+        }
+        if (mandatoryVP == null) {
+            System.err.println("ERROR: No mandatory viewpoint found!");
+            return;
+        }
+
+        // Mandatory viewpoint must be the tour start
+        tour.remove(mandatoryVP);
+        tour.add(0, mandatoryVP);
+        solution.getSelectedAngles().putIfAbsent(mandatoryVP, new HashSet<>());
+
+        // Drop angles that are not available at the viewpoint
+        int droppedAngles = 0;
+        for (Map.Entry<ViewPoint, Set<String>> entry : solution.getSelectedAngles().entrySet()) {
+            Map<String, Double> available = entry.getKey().getPrecisionMap();
+            int before = entry.getValue().size();
+            entry.getValue().removeIf(angleId -> !available.containsKey(angleId));
+            droppedAngles += before - entry.getValue().size();
         }
+
+        // Greedily keep the prefix-feasible viewpoints in the original order, set aside the rest
+        List<ViewPoint> original = new ArrayList<>(tour);
+        List<ViewPoint> detached = new ArrayList<>();
+        tour.clear();
+        tour.add(mandatoryVP);
+        for (int i = 1; i < original.size(); i++) {
+            ViewPoint vp = original.get(i);
+            ViewPoint last = tour.get(tour.size() - 1);
+            if (collisionMatrix.allowed(vpIndex.get(last.getId()), vpIndex.get(vp.getId()))) {
+                tour.add(vp);
+            } else {
+                detached.add(vp);
+            }
+        }
+        // The tour must be able to close back to the mandatory viewpoint
+        while (tour.size() > 1 &&
+                !collisionMatrix.allowed(vpIndex.get(tour.get(tour.size() - 1).getId()),
+                        vpIndex.get(mandatoryVP.getId()))) {
+            detached.add(tour.remove(tour.size() - 1));
+        }
+
+        // Re-insert detached viewpoints where they fit
+        TourArrays tourArrays = new TourArrays(tour, instance);
+        int reinserted = 0;
+        for (ViewPoint vp : detached) {
+            int v = instance.indexOf(vp);
+            int pos = tourArrays.cheapestInsertPosition(v, vp, collisionMatrix);
+            if (pos > 0) {
+                tour.add(pos, vp);
+                tourArrays.insert(pos, v, vp);
+                reinserted++;
+            } else {
+                solution.getSelectedAngles().remove(vp);
+            }
+        }
+
+        System.err.println("Repair: " + detached.size() + " viewpoints detached, " + reinserted +
+                " re-inserted, " + droppedAngles + " invalid angles dropped");
     }
 
-    // ==================== Algorithm Implementation ====================
+    /**
+     * Recomputes coverage counts (selected viewpoint-angle pairs per sample) from scratch.
+     */
+    private static Coverage computeCoverage(Solution solution, CompiledInstance instance) {
+        return computeCoverage(solution, instance, instance.getPairs());
+    }
 
-    private static void checkTimeLimit(String phase) {
-        long elapsed = System.currentTimeMillis() - startTime;
-        if (elapsed > TIME_LIMIT_MS) {
-            System.err.println("Time limit at " + phase + ": " + elapsed / 1000.0 + "s");
-            System.exit(1);
+    // Same, counted over the given pair store (e.g. the original one for validation)
+    private static Coverage computeCoverage(Solution solution, CompiledInstance instance, CoveringPairStore pairs) {
+        Coverage coverage = new Coverage(instance.numSamples());
+        for (ViewPoint vp : solution.getTour()) {
+            Set<String> angles = solution.getSelectedAngles().get(vp);
+            if (angles == null || angles.isEmpty()) continue;
+
+            for (String angleId : angles) {
+                Integer a = instance.getAngleIndex().get(angleId);
+                if (a != null) {
+                    addAngleCoverage(pairs, coverage, instance.indexOf(vp), a);
+                }
+            }
         }
+        return coverage;
     }
 
-    private static Solution solveUAVProblem(String input) {
-        checkTimeLimit("Start solve");
+    // Counts one more cover for every sample viewpoint v sees under angle a
+    private static void addAngleCoverage(CompiledInstance instance, Coverage coverage, int v, int a) {
+        addAngleCoverage(instance.getPairs(), coverage, v, a);
+    }
 
-        // Phase 1: Parse
-        System.err.println("Phase 1: Parsing...");
-        Map<String, ViewPoint> viewPoints = parseViewPoints(input);
-        Map<String, SamplePoint> samplePoints = parseSamplePoints(input);
-        int[][] collisionMatrix = parseCollisionMatrix(input);
-        checkTimeLimit("After parsing");
+    private static void addAngleCoverage(CoveringPairStore pairs, Coverage coverage, int v, int a) {
+        for (int k = pairs.vpStart(v); k < pairs.vpEnd(v); k++) {
+            int packed = pairs.vpPair(k);
+            if (CoveringPairStore.angle(packed) == a) {
+                coverage.increment(CoveringPairStore.id(packed));
+            }
+        }
+    }
 
-        // Build viewpoint index for validation
-        List<ViewPoint> vpList = new ArrayList<>(viewPoints.values());
-        Map<String, Integer> vpIndex = new HashMap<>();
-        for (int i = 0; i < vpList.size(); i++) {
-            vpIndex.put(vpList.get(i).getId(), i);
+    /**
+     * Called whenever the incumbent changed: counts the move, publishes progress if the sampler
+     * asked for it, and writes the checkpoint file if checkpointing is enabled and
+     * CHECKPOINT_INTERVAL_MS has passed since the last checkpoint.
+     */
+    private static void maybeCheckpoint(Solution solution) {
+        progress.countMove();
+        progress.publishIfRequested(solution);
+        if (checkpointPath == null) return;
+        if (System.currentTimeMillis() - lastCheckpointTime < CHECKPOINT_INTERVAL_MS) return;
+        writeCheckpoint(solution);
+    }
+
+    /**
+     * Writes the solution to the checkpoint file. The file is written to a temporary sibling
+     * and moved into place so a reader never sees a half-written checkpoint.
+     */
+    private static void writeCheckpoint(Solution solution) {
+        if (checkpointPath == null) return;
+        lastCheckpointTime = System.currentTimeMillis();
+        try {
+            calculateMetrics(solution, Collections.emptyMap());
+            Path target = Paths.get(checkpointPath);
+            Path tmp = Paths.get(checkpointPath + ".tmp");
+            try (PrintStream out = new PrintStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                outputSolution(solution, out);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.err.println("Checkpoint written: " + solution.getTour().size() + " viewpoints");
+        } catch (IOException e) {
+            System.err.println("Error writing checkpoint: " + e.getMessage());
         }
+    }
 
-        // Phase 2: Greedy construction
-        System.err.println("Phase 2: Greedy construction...");
-        Solution solution = greedyConstruction(viewPoints, samplePoints, collisionMatrix);
-        checkTimeLimit("After greedy");
+    // ==================== Incremental Re-planning ====================
 
-        // Phase 3: Calculate metrics
-        System.err.println("Phase 3: Calculating metrics...");
-        calculateMetrics(solution, viewPoints);
+    /**
+     * Applies a change set to the instance (collision matrix, samples) and locally repairs
+     * the solution in place: only the tour positions of blocked edges and disabled viewpoints
+     * and the samples that lost coverage or were added are touched, so apart from one pass that
+     * indexes the tour the work is proportional to the size of the change.
+     *
+     * Broken edges are bridged with the cheapest unused viewpoint that keeps the tour within
+     * constructionRange(), otherwise the non-mandatory endpoint is dropped. Lost coverage is restored by first selecting more angles
+     * at viewpoints already in the tour, then by inserting new viewpoints.
+     *
+     * coverage must describe the solution before the change and is kept up to date.
+     */
+    private static ReplanResult replanSolution(Solution solution,
+                                               ChangeSet changes,
+                                               CompiledInstance instance,
+                                               Coverage coverage) throws IOException {
+        long replanStart = System.nanoTime();
+        ReplanResult result = new ReplanResult(solution);
+        List<ViewPoint> tour = solution.getTour();
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        Set<Integer> affectedSamples = new LinkedHashSet<>();
+
+        int firstAdded = applyChangeSet(changes, instance);
+        coverage.resize(instance.numSamples());
+
+        // Count added samples against the current selection
+        CoveringPairStore pairs = instance.getPairs();
+        for (int s = firstAdded; s < instance.numSamples(); s++) {
+            for (int k = pairs.sampleStart(s); k < pairs.sampleEnd(s); k++) {
+                int packed = pairs.samplePair(k);
+                Set<String> angles = solution.getSelectedAngles()
+                        .get(instance.getViewPoint(CoveringPairStore.id(packed)));
+                if (angles != null && angles.contains(instance.getAngleId(CoveringPairStore.angle(packed)))) {
+                    coverage.increment(s);
+                }
+            }
+            affectedSamples.add(s);
+        }
 
-        // Phase 4: Validate solution
-        System.err.println("Phase 4: Validating solution...");
-        boolean isValid = validateSolution(solution, viewPoints, samplePoints, vpIndex, collisionMatrix);
-        if (!isValid) {
-            System.err.println("WARNING: Solution does not satisfy all constraints!");
+        // The tour has to start at the mandatory viewpoint; rotating keeps every edge
+        Set<String> disabled = changes.getDisabledViewPoints();
+        boolean mandatoryAdded = forceMandatoryFirst(solution, instance);
+
+        // One pass over the tour for membership, positions and length. From here on only the
+        // positions the change set touches are looked at.
+        int n = tour.size();
+        boolean[] inTour = new boolean[instance.numViewPoints()];
+        int[] position = new int[instance.numViewPoints()];
+        double length = 0.0;
+        for (int k = 0; k < n; k++) {
+            int v = instance.indexOf(tour.get(k));
+            inTour[v] = true;
+            position[v] = k;
+            length += tour.get(k).distanceTo(tour.get((k + 1) % n));
         }
-        checkTimeLimit("After validation");
 
-        System.err.println("Solution: " + solution.getTour().size() + " viewpoints, " +
-                "distance=" + String.format("%.2f", solution.getTotalDistance()) +
-                ", precision=" + String.format("%.2f", solution.getTotalPrecision()));
+        // Work list, highest tour position first so that inserting or removing at a position never
+        // moves one still waiting: 2 * pos + 1 drops the disabled viewpoint at pos, 2 * pos checks
+        // the edge pos -> pos + 1
+        TreeSet<Integer> work = new TreeSet<>();
+        for (String id : disabled) {
+            Integer v = instance.getVpIndex().get(id);
+            if (v != null && inTour[v] && position[v] > 0) work.add(2 * position[v] + 1);
+        }
+        Map<String, Integer> vpIndex = instance.getVpIndex();
+        for (String[] edge : changes.getBlockedEdges()) {
+            Integer u = vpIndex.get(edge[0]);
+            Integer w = vpIndex.get(edge[1]);
+            if (u == null || w == null || !inTour[u] || !inTour[w]) continue;
+            if (instance.indexOf(tour.get((position[u] + 1) % n)) == w) work.add(2 * position[u]);
+        }
+        if (mandatoryAdded && n > 1) {
+            work.add(0);
+            work.add(2 * (n - 1));
+        }
+
+        while (!work.isEmpty()) {
+            int item = work.pollLast();
+            int i = item >> 1;
+            if ((item & 1) != 0) {
+                length -= removalSaving(tour, i);
+                removeFromTour(solution, i, instance, inTour, coverage, affectedSamples, result);
+                work.add(2 * (i - 1)); // the predecessor now leads to the next viewpoint
+                continue;
+            }
+            if (tour.size() < 2 || i >= tour.size()) continue;
+
+            ViewPoint from = tour.get(i);
+            int nextPos = (i + 1) % tour.size();
+            ViewPoint to = tour.get(nextPos);
+            if (collisionMatrix.allowed(instance.indexOf(from), instance.indexOf(to))) continue;
+
+            // The bridge replaces from -> to, so it may add what is left of the range to that edge
+            double maxDetour = constructionRange() - length + from.distanceTo(to);
+            ViewPoint bridge = findBridge(from, to, inTour, disabled, instance, maxDetour);
+            if (bridge != null) {
+                length += from.distanceTo(bridge) + bridge.distanceTo(to) - from.distanceTo(to);
+                tour.add(i + 1, bridge);
+                inTour[instance.indexOf(bridge)] = true;
+                solution.getSelectedAngles().putIfAbsent(bridge, new HashSet<>());
+                result.getAddedViewPoints().add(bridge.getId());
+            } else if (nextPos != 0) {
+                length -= removalSaving(tour, nextPos);
+                removeFromTour(solution, nextPos, instance, inTour, coverage, affectedSamples, result);
+                work.add(2 * i);
+            } else {
+                // Closing edge back to the mandatory viewpoint: drop the last viewpoint instead
+                length -= removalSaving(tour, i);
+                removeFromTour(solution, i, instance, inTour, coverage, affectedSamples, result);
+                work.add(2 * (i - 1));
+            }
+        }
+
+        restoreCoverage(solution, affectedSamples, disabled, instance, inTour, coverage, result);
+
+        System.err.println("Replan: " + changes.size() + " changes, " +
+                result.getRemovedViewPoints().size() + " viewpoints removed, " +
+                result.getAddedViewPoints().size() + " added, " +
+                result.getAddedAngles().size() + " viewpoints with new angles, " +
+                coverage.getSatisfied() + "/" + instance.numSamples() + " samples fully covered in " +
+                (System.nanoTime() - replanStart) / 1000000 + " ms");
+        return result;
+    }
+
+    /**
+     * Applies a change set to the instance only. Returns the dense id of the first added sample
+     * (numSamples() if none were added).
+     */
+    private static int applyChangeSet(ChangeSet changes, CompiledInstance instance) throws IOException {
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        Map<String, Integer> vpIndex = instance.getVpIndex();
+
+        for (String[] edge : changes.getBlockedEdges()) {
+            setEdge(collisionMatrix, vpIndex, edge[0], edge[1], false);
+        }
+        for (String[] edge : changes.getOpenedEdges()) {
+            setEdge(collisionMatrix, vpIndex, edge[0], edge[1], true);
+        }
+        for (String id : changes.getDisabledViewPoints()) {
+            // An unavailable viewpoint has no usable edges
+            Integer idx = vpIndex.get(id);
+            if (idx == null) continue;
+            for (int j = 0; j < collisionMatrix.size(); j++) {
+                collisionMatrix.set(idx, j, false);
+                collisionMatrix.set(j, idx, false);
+            }
+        }
+        if (changes.getAddedSamples().isEmpty()) {
+            return instance.numSamples();
+        }
+        return instance.addSamples(changes.getAddedSamples());
+    }
+
+    private static void setEdge(CollisionMatrix collisionMatrix, Map<String, Integer> vpIndex,
+                                String fromId, String toId, boolean allowed) {
+        Integer from = vpIndex.get(fromId);
+        Integer to = vpIndex.get(toId);
+        if (from == null || to == null) {
+            System.err.println("Ignoring edge change for unknown viewpoint: " + fromId + " -> " + toId);
+            return;
+        }
+        collisionMatrix.set(from, to, allowed);
+    }
+
+    /**
+     * Rotates the tour so that it starts at the mandatory viewpoint, or puts the mandatory
+     * viewpoint first if the tour lacks it. Returns true if it had to be added.
+     */
+    private static boolean forceMandatoryFirst(Solution solution, CompiledInstance instance) {
+        List<ViewPoint> tour = solution.getTour();
+        for (int k = 0; k < tour.size(); k++) {
+            if (!tour.get(k).isMandatory()) continue;
+            if (k > 0) {
+                System.err.println("Replan: rotating the tour to start at mandatory viewpoint " + tour.get(k).getId());
+                Collections.rotate(tour, -k);
+            }
+            return false;
+        }
+        for (ViewPoint vp : instance.getViewPoints()) {
+            if (vp.isMandatory()) {
+                System.err.println("Replan: adding missing mandatory viewpoint " + vp.getId());
+                tour.add(0, vp);
+                solution.getSelectedAngles().putIfAbsent(vp, new HashSet<>());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the viewpoint at pos and withdraws the coverage of its selected angles,
+     * recording samples that drop below the coverage threshold as affected.
+     */
+    private static void removeFromTour(Solution solution, int pos,
+                                       CompiledInstance instance,
+                                       boolean[] inTour,
+                                       Coverage coverage,
+                                       Set<Integer> affectedSamples,
+                                       ReplanResult result) {
+        ViewPoint vp = solution.getTour().remove(pos);
+        inTour[instance.indexOf(vp)] = false;
+        Set<String> angles = solution.getSelectedAngles().remove(vp);
+        result.getRemovedViewPoints().add(vp.getId());
+        if (angles == null || angles.isEmpty()) return;
+
+        CoveringPairStore pairs = instance.getPairs();
+        int v = instance.indexOf(vp);
+        for (int k = pairs.vpStart(v); k < pairs.vpEnd(v); k++) {
+            int packed = pairs.vpPair(k);
+            if (!angles.contains(instance.getAngleId(CoveringPairStore.angle(packed)))) continue;
+
+            int s = CoveringPairStore.id(packed);
+            coverage.decrement(s);
+            if (coverage.get(s) < coverageThreshold) {
+                affectedSamples.add(s);
+            }
+        }
+    }
+
+    // Distance saved by taking tour[pos] out of the closed tour
+    private static double removalSaving(List<ViewPoint> tour, int pos) {
+        ViewPoint p = tour.get(pos - 1), v = tour.get(pos), q = tour.get((pos + 1) % tour.size());
+        return p.distanceTo(v) + v.distanceTo(q) - p.distanceTo(q);
+    }
+
+    /**
+     * Finds the viewpoint w outside the tour with from -> w -> to valid and the smallest detour of
+     * at most maxDetour, or null. Only the successors of from in its collision matrix row are tried.
+     */
+    private static ViewPoint findBridge(ViewPoint from, ViewPoint to, boolean[] inTour,
+                                        Set<String> disabled,
+                                        CompiledInstance instance,
+                                        double maxDetour) {
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        long[] successors = collisionMatrix.row(instance.indexOf(from));
+        int toIdx = instance.indexOf(to);
+
+        ViewPoint best = null;
+        double bestDetour = Double.MAX_VALUE;
+        for (int w = nextSetBit(successors, 0); w >= 0 && w < instance.numViewPoints();
+             w = nextSetBit(successors, w + 1)) {
+            if (inTour[w] || !instance.isUsable(w) || !collisionMatrix.allowed(w, toIdx)) continue;
+            ViewPoint vp = instance.getViewPoint(w);
+            if (disabled.contains(vp.getId())) continue;
+
+            double detour = from.distanceTo(vp) + vp.distanceTo(to);
+            if (detour < bestDetour && detour <= maxDetour) {
+                bestDetour = detour;
+                best = vp;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Brings the affected samples back to the coverage threshold where possible. Adding an angle at a viewpoint
+     * already in the tour is free in distance, so that is tried before inserting new viewpoints.
+     */
+    private static void restoreCoverage(Solution solution,
+                                        Set<Integer> affectedSamples,
+                                        Set<String> disabled,
+                                        CompiledInstance instance,
+                                        boolean[] inTour,
+                                        Coverage coverage,
+                                        ReplanResult result) {
+        List<ViewPoint> tour = solution.getTour();
+        CoveringPairStore pairs = instance.getPairs();
+        TourArrays tourArrays = null; // built on the first insertion
+
+        for (int s : affectedSamples) {
+            // Pass 0: angles at tour viewpoints, pass 1: new viewpoints
+            for (int pass = 0; pass < 2 && coverage.get(s) < coverageThreshold; pass++) {
+                for (int k = pairs.sampleStart(s); k < pairs.sampleEnd(s) && coverage.get(s) < coverageThreshold; k++) {
+                    int packed = pairs.samplePair(k);
+                    int v = CoveringPairStore.id(packed);
+                    int a = CoveringPairStore.angle(packed);
+                    ViewPoint vp = instance.getViewPoint(v);
+                    String angleId = instance.getAngleId(a);
+
+                    if (disabled.contains(vp.getId()) || !instance.isUsable(v)) continue;
+                    if (inTour[v] != (pass == 0)) continue;
+
+                    Set<String> angles = solution.getSelectedAngles().get(vp);
+                    if (angles != null && angles.contains(angleId)) continue;
+
+                    if (pass == 1) {
+                        if (tourArrays == null) tourArrays = new TourArrays(tour, instance);
+                        int pos = tourArrays.cheapestInsertPosition(v, vp, instance.getCollisionMatrix());
+                        if (pos < 0) continue;
+                        tour.add(pos, vp);
+                        tourArrays.insert(pos, v, vp);
+                        inTour[v] = true;
+                        solution.getSelectedAngles().putIfAbsent(vp, new HashSet<>());
+                        result.getAddedViewPoints().add(vp.getId());
+                    }
 
-        return solution;
+                    solution.addAngle(vp, angleId);
+                    result.addAngle(vp.getId(), angleId);
+                    addAngleCoverage(instance, coverage, v, a);
+                }
+            }
+        }
     }
 
-    private static Solution greedyConstruction(Map<String, ViewPoint> viewPoints,
-                                               Map<String, SamplePoint> samplePoints,
-                                               int[][] collisionMatrix) {
+    private static Solution greedyConstruction(CompiledInstance instance, ConstructionStrategy strategy,
+                                               Coverage coverage) {
         Solution solution = new Solution();
-        Set<String> coveredSamples = new HashSet<>();
-        Map<String, Integer> coverageCount = new HashMap<>(); // sample_id -> count
-
-        // Index viewpoints
-        List<ViewPoint> vpList = new ArrayList<>(viewPoints.values());
-        Map<String, Integer> vpIndex = new HashMap<>();
-        for (int i = 0; i < vpList.size(); i++) {
-            vpIndex.put(vpList.get(i).getId(), i);
-        }
+        progress.track(coverage);
+        CoveringPairStore pairs = instance.getPairs();
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        ViewPoint[] vpList = instance.getViewPoints();
 
         // Find and add mandatory viewpoint as starting point
         ViewPoint mandatoryVP = null;
@@ -460,261 +4389,303 @@ public class AADS {
             return solution;
         }
 
-        // Greedy: select viewpoints that cover most uncovered samples
-        // and can be connected to the tour via collision matrix
-        while (coveredSamples.size() < samplePoints.size() && solution.getTour().size() < vpList.size()) {
+        // Greedy: select viewpoints by the strategy's score among those that cover
+        // uncovered samples and can be connected to the tour via collision matrix
+        System.err.println("Construction strategy: " + strategy.name());
+        TourArrays tourArrays = new TourArrays(solution.getTour(), instance);
+        boolean[] active = new boolean[vpList.length]; // not yet in the tour, still useful
+        for (int v = 0; v < vpList.length; v++) {
+            active[v] = instance.isUsable(v);
+        }
+        active[instance.indexOf(mandatoryVP)] = false;
+        int[] gains = new int[vpList.length];
+        double[] costs = new double[strategy.positionsNeeded()];
+
+        // Cheapest insertion edges per candidate, patched locally after each insertion
+        InsertionCache cache = new InsertionCache(vpList.length, strategy.positionsNeeded());
+        NewPrecisionSums newPrecision = strategy.usesPrecision() ? new NewPrecisionSums(instance, coverage) : null;
+        for (int v = 0; v < vpList.length; v++) {
+            if (active[v]) cache.rescan(v, instance, tourArrays);
+        }
+
+        while (coverage.getSatisfied() < instance.numSamples() && solution.getTour().size() < vpList.length) {
             checkTimeLimit("During greedy");
+            if (phaseTimeUp()) {
+                System.err.println("Greedy: phase budget used up");
+                break;
+            }
 
-            ViewPoint bestVP = null;
-            int maxNewCoverage = 0;
-            int bestInsertPosition = -1;
+            int bestIdx = -1;
+            double bestScore = -Double.MAX_VALUE;
 
             List<ViewPoint> currentTour = solution.getTour();
 
-            for (ViewPoint vp : vpList) {
-                if (currentTour.contains(vp)) continue;
-
-                // Calculate coverage benefit - count ALL coverings, not just unique samples
-                // This allows a viewpoint to cover the same sample multiple times with different angles
-                int newCoverage = 0;
-                for (SamplePoint sp : samplePoints.values()) {
-                    int currentCoverage = coverageCount.getOrDefault(sp.getId(), 0);
-                    if (currentCoverage >= 3) continue; // Already covered 3+ times
-
-                    // Check if this viewpoint can cover this sample (count once per sample)
-                    for (String[] pair : sp.getCoveringPairs()) {
-                        if (pair[0].equals(vp.getId())) {
-                            newCoverage++;
-                            break; // Count each sample once for greedy selection
-                        }
-                    }
-                }
-
-                // Only consider viewpoints that provide coverage benefit
-                if (newCoverage == 0) continue;
-
-                // Check if this viewpoint can be connected to the tour
-                // Find the best position to insert this viewpoint
-                Integer vpIdx = vpIndex.get(vp.getId());
-                if (vpIdx == null) continue;
-
-                int bestPos = -1;
-                double minDistanceIncrease = Double.MAX_VALUE;
-
-                // Try inserting at each position in the tour
-                // NOTE: Position 0 is reserved for the mandatory viewpoint, so we start from position 1
-                int startPos = (currentTour.size() == 1) ? 1 : 1;
-                int endPos = currentTour.size();
-
-                for (int pos = startPos; pos <= endPos; pos++) {
-                    int prevIdx = -1;
-                    int nextIdx = -1;
-
-                    if (currentTour.size() == 1) {
-                        // Special case: only mandatory viewpoint in tour
-                        // Check if we can go from mandatory -> vp -> mandatory
-                        prevIdx = vpIndex.get(currentTour.get(0).getId());
-                        nextIdx = prevIdx;
-                    } else if (pos == currentTour.size()) {
-                        // Insert at end: check last -> vp and vp -> mandatory (position 0)
-                        prevIdx = vpIndex.get(currentTour.get(currentTour.size() - 1).getId());
-                        nextIdx = vpIndex.get(currentTour.get(0).getId());
-                    } else {
-                        // Insert in middle: check prev -> vp and vp -> next
-                        prevIdx = vpIndex.get(currentTour.get(pos - 1).getId());
-                        nextIdx = vpIndex.get(currentTour.get(pos).getId());
-                    }
-
-                    // Check if connections are valid in collision matrix
-                    if (prevIdx >= 0 && nextIdx >= 0 &&
-                            collisionMatrix[prevIdx][vpIdx] == 1 &&
-                            collisionMatrix[vpIdx][nextIdx] == 1) {
+            // Coverage benefit of every candidate: samples below the coverage threshold it sees at all
+            // (each sample counted once for greedy selection)
+            kernels.marginalGains(instance.getVpSampleOffsets(), instance.getVpSamples(),
+                    coverage.counts(), coverageThreshold, active, gains);
 
-                        // Calculate distance increase
-                        double distIncrease = currentTour.get(pos == 0 ? currentTour.size() - 1 : pos - 1).distanceTo(vp) +
-                                vp.distanceTo(currentTour.get(pos == currentTour.size() ? 0 : pos));
-
-                        if (pos > 0 && pos < currentTour.size()) {
-                            distIncrease -= currentTour.get(pos - 1).distanceTo(currentTour.get(pos));
-                        }
+            for (int vpIdx = 0; vpIdx < vpList.length; vpIdx++) {
+                if (!active[vpIdx]) continue;
 
-                        if (distIncrease < minDistanceIncrease) {
-                            minDistanceIncrease = distIncrease;
-                            bestPos = pos;
-                        }
-                    }
+                // Coverage only grows, so a viewpoint without benefit never gets one again
+                if (gains[vpIdx] == 0) {
+                    active[vpIdx] = false;
+                    continue;
                 }
 
-                // If we found a valid insertion position and this viewpoint has better coverage
-                if (bestPos >= 0 && newCoverage > maxNewCoverage) {
-                    maxNewCoverage = newCoverage;
-                    bestVP = vp;
-                    bestInsertPosition = bestPos;
+                // Must be connectable to the tour at some position >= 1
+                // (position 0 is reserved for the mandatory viewpoint)
+                int found = cache.costs(vpIdx, costs);
+                if (found == 0 || !tourArrays.fitsRange(costs[0])) continue;
+
+                double precision = (newPrecision != null) ? newPrecision.mean(vpIdx) : 0.0;
+                double score = strategy.score(gains[vpIdx], precision, costs, found);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestIdx = vpIdx;
                 }
             }
 
-            if (bestVP == null || maxNewCoverage == 0) {
+            if (bestIdx == -1) {
                 System.err.println("No more connectable viewpoints with coverage benefit");
                 break;
             }
 
-            // Insert viewpoint at the best position
-            // Ensure we never insert at position 0 (reserved for mandatory viewpoint)
-            if (bestInsertPosition > 0 && bestInsertPosition < currentTour.size()) {
-                currentTour.add(bestInsertPosition, bestVP);
-            } else {
-                // Insert at the end
-                currentTour.add(bestVP);
-            }
+            // Insert viewpoint after the from-node of its cheapest edge
+            ViewPoint bestVP = vpList[bestIdx];
+            int from = cache.fromNode(bestIdx, 0);
+            int bestInsertPosition = tourArrays.positionOf(from) + 1;
+            int next = tourArrays.node(bestInsertPosition < tourArrays.size() ? bestInsertPosition : 0);
+            currentTour.add(bestInsertPosition, bestVP);
+            tourArrays.insert(bestInsertPosition, bestIdx, bestVP);
+            active[bestIdx] = false;
             solution.getSelectedAngles().putIfAbsent(bestVP, new HashSet<>());
-
-            // Update coverage
-            for (SamplePoint sp : samplePoints.values()) {
-                for (String[] pair : sp.getCoveringPairs()) {
-                    if (pair[0].equals(bestVP.getId())) {
-                        String angleId = pair[1];
-                        solution.addAngle(bestVP, angleId);
-
-                        coverageCount.put(sp.getId(),
-                                coverageCount.getOrDefault(sp.getId(), 0) + 1);
-                        if (coverageCount.get(sp.getId()) >= 3) {
-                            coveredSamples.add(sp.getId());
-                        }
-                        break;
-                    }
+            cache.onInsert(from, bestIdx, next, active, instance, tourArrays);
+
+            // Update coverage: the first covering angle for each sample
+            int lastSample = -1;
+            for (int k = pairs.vpStart(bestIdx); k < pairs.vpEnd(bestIdx); k++) {
+                int packed = pairs.vpPair(k);
+                int s = CoveringPairStore.id(packed);
+                if (s == lastSample) continue;
+                lastSample = s;
+
+                solution.addAngle(bestVP, instance.getAngleId(CoveringPairStore.angle(packed)));
+                coverage.increment(s);
+                if (newPrecision != null && coverage.get(s) == coverageThreshold) {
+                    newPrecision.onSatisfied(s);
                 }
             }
+
+            maybeCheckpoint(solution);
         }
 
         System.err.println("Greedy: " + solution.getTour().size() + " viewpoints, " +
-                coveredSamples.size() + "/" + samplePoints.size() + " samples fully covered");
-
-        // Phase 2: Improvement - try to add viewpoints for under-covered samples
-        // by attempting more flexible insertion strategies
-        improveCoverage(solution, viewPoints, samplePoints, collisionMatrix, vpIndex,
-                coverageCount, coveredSamples);
-
-        System.err.println("After improvement: " + solution.getTour().size() + " viewpoints, " +
-                coveredSamples.size() + "/" + samplePoints.size() + " samples fully covered");
+                coverage.getSatisfied() + "/" + instance.numSamples() + " samples fully covered (" +
+                cache.getRescans() + " insertion rescans, " + cache.getPatches() + " patches)");
 
         return solution;
     }
 
-    private static void improveCoverage(Solution solution,
-                                        Map<String, ViewPoint> viewPoints,
-                                        Map<String, SamplePoint> samplePoints,
-                                        int[][] collisionMatrix,
-                                        Map<String, Integer> vpIndex,
-                                        Map<String, Integer> coverageCount,
-                                        Set<String> coveredSamples) {
-        // Find under-covered samples
-        List<SamplePoint> underCovered = new ArrayList<>();
-        for (SamplePoint sp : samplePoints.values()) {
-            int coverage = coverageCount.getOrDefault(sp.getId(), 0);
-            if (coverage < 3) {
-                underCovered.add(sp);
+    /**
+     * Mean precision of the covers each viewpoint would add for samples below the coverage threshold
+     * (first covering angle per sample, as greedy construction selects them). Kept as running sums:
+     * when a sample reaches the threshold only the viewpoints covering it are updated, like the
+     * local patches of the InsertionCache.
+     */
+    static class NewPrecisionSums {
+        private final CompiledInstance instance;
+        private final double[] sum;
+        private final int[] count;
+
+        NewPrecisionSums(CompiledInstance instance, Coverage coverage) {
+            this.instance = instance;
+            this.sum = new double[instance.numViewPoints()];
+            this.count = new int[instance.numViewPoints()];
+            CoveringPairStore pairs = instance.getPairs();
+            for (int v = 0; v < sum.length; v++) {
+                int lastSample = -1;
+                for (int k = pairs.vpStart(v); k < pairs.vpEnd(v); k++) {
+                    int packed = pairs.vpPair(k);
+                    int s = CoveringPairStore.id(packed);
+                    if (s == lastSample) continue;
+                    lastSample = s;
+                    if (coverage.get(s) < coverageThreshold) {
+                        sum[v] += instance.getPrecision(v, CoveringPairStore.angle(packed));
+                        count[v]++;
+                    }
+                }
             }
         }
 
-        if (underCovered.isEmpty()) {
-            return; // All samples covered
+        double mean(int v) {
+            return count[v] > 0 ? sum[v] / count[v] : 0.0;
         }
 
-        System.err.println("Attempting to improve coverage for " + underCovered.size() + " under-covered samples");
+        // Sample s just reached the threshold: withdraw it from every viewpoint that covers it.
+        // Both pair orders follow the input, so the first pair per viewpoint is the one counted above.
+        void onSatisfied(int s) {
+            CoveringPairStore pairs = instance.getPairs();
+            for (int k = pairs.sampleStart(s); k < pairs.sampleEnd(s); k++) {
+                int packed = pairs.samplePair(k);
+                int v = CoveringPairStore.id(packed);
+                if (seenBefore(pairs, s, k, v)) continue;
+                sum[v] -= instance.getPrecision(v, CoveringPairStore.angle(packed));
+                if (--count[v] == 0) sum[v] = 0.0;
+            }
+        }
 
-        List<ViewPoint> tour = solution.getTour();
-        Set<ViewPoint> tourSet = new HashSet<>(tour);
+        // True if viewpoint v already appears in the pairs of s before position k
+        private static boolean seenBefore(CoveringPairStore pairs, int s, int k, int v) {
+            for (int j = pairs.sampleStart(s); j < k; j++) {
+                if (CoveringPairStore.id(pairs.samplePair(j)) == v) return true;
+            }
+            return false;
+        }
+    }
 
-        // Collect viewpoints that could help with under-covered samples
-        Set<ViewPoint> candidateVPs = new HashSet<>();
-        for (SamplePoint sp : underCovered) {
-            for (String[] pair : sp.getCoveringPairs()) {
-                ViewPoint vp = viewPoints.get(pair[0]);
-                if (vp != null && !tourSet.contains(vp)) {
+    private static List<Integer> underCoveredSamples(CompiledInstance instance, Coverage coverage) {
+        List<Integer> underCovered = new ArrayList<>();
+        for (int s = 0; s < instance.numSamples(); s++) {
+            if (coverage.get(s) < coverageThreshold) {
+                underCovered.add(s);
+            }
+        }
+        return underCovered;
+    }
+
+    // Usable viewpoints outside the tour that could help the under-covered samples
+    private static Set<ViewPoint> coverageCandidates(Solution solution, CompiledInstance instance,
+                                                     List<Integer> underCovered) {
+        CoveringPairStore pairs = instance.getPairs();
+        Set<ViewPoint> tourSet = new HashSet<>(solution.getTour());
+        Set<ViewPoint> candidateVPs = new LinkedHashSet<>();
+        for (int s : underCovered) {
+            for (int k = pairs.sampleStart(s); k < pairs.sampleEnd(s); k++) {
+                int v = CoveringPairStore.id(pairs.samplePair(k));
+                ViewPoint vp = instance.getViewPoint(v);
+                if (instance.isUsable(v) && !tourSet.contains(vp)) {
                     candidateVPs.add(vp);
                 }
             }
         }
+        return candidateVPs;
+    }
 
-        System.err.println("Found " + candidateVPs.size() + " candidate viewpoints to try");
+    /**
+     * Selects the unselected angles of tour viewpoints that cover an under-covered sample.
+     * Returns how many angles were added.
+     */
+    private static int selectTourAngles(Solution solution, CompiledInstance instance, Coverage coverage,
+                                        List<Integer> underCovered) {
+        CoveringPairStore pairs = instance.getPairs();
+        boolean[] inTour = new boolean[instance.numViewPoints()];
+        for (ViewPoint vp : solution.getTour()) {
+            inTour[instance.indexOf(vp)] = true;
+        }
+        int added = 0;
+        for (int s : underCovered) {
+            for (int k = pairs.sampleStart(s); k < pairs.sampleEnd(s) && coverage.get(s) < coverageThreshold; k++) {
+                int packed = pairs.samplePair(k);
+                int v = CoveringPairStore.id(packed);
+                if (!inTour[v]) continue;
+                ViewPoint vp = instance.getViewPoint(v);
+                String angleId = instance.getAngleId(CoveringPairStore.angle(packed));
+                Set<String> selected = solution.getSelectedAngles().computeIfAbsent(vp, key -> new HashSet<>());
+                if (selected.add(angleId)) {
+                    addAngleCoverage(instance, coverage, v, CoveringPairStore.angle(packed));
+                    added++;
+                }
+            }
+        }
+        if (added > 0) maybeCheckpoint(solution);
+        return added;
+    }
 
-        // Try to insert each candidate viewpoint anywhere in the tour
-        // Allow multiple attempts with different relaxation strategies
-        int addedCount = 0;
-        for (ViewPoint candidate : candidateVPs) {
-            Integer candIdx = vpIndex.get(candidate.getId());
-            if (candIdx == null) continue;
+    private static void improveCoverage(Solution solution,
+                                        CompiledInstance instance,
+                                        Coverage coverage) {
+        CoveringPairStore pairs = instance.getPairs();
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
 
-            // Try inserting at each position (skip position 0 to preserve mandatory start)
-            for (int pos = 1; pos <= tour.size(); pos++) {
-                // Check connectivity
-                ViewPoint prev = tour.get(pos - 1);
-                ViewPoint next = (pos < tour.size()) ? tour.get(pos) : tour.get(0);
+        // Find under-covered samples
+        List<Integer> underCovered = underCoveredSamples(instance, coverage);
+        if (underCovered.isEmpty()) {
+            return; // All samples covered
+        }
 
-                Integer prevIdx = vpIndex.get(prev.getId());
-                Integer nextIdx = vpIndex.get(next.getId());
+        System.err.println("Attempting to improve coverage for " + underCovered.size() + " under-covered samples");
 
-                if (prevIdx != null && nextIdx != null &&
-                        collisionMatrix[prevIdx][candIdx] == 1 &&
-                        collisionMatrix[candIdx][nextIdx] == 1) {
-
-                    // Valid insertion position found!
-                    tour.add(pos, candidate);
-                    solution.getSelectedAngles().putIfAbsent(candidate, new HashSet<>());
-
-                    // Update coverage
-                    for (SamplePoint sp : samplePoints.values()) {
-                        for (String[] pair : sp.getCoveringPairs()) {
-                            if (pair[0].equals(candidate.getId())) {
-                                String angleId = pair[1];
-                                solution.addAngle(candidate, angleId);
-
-                                coverageCount.put(sp.getId(),
-                                        coverageCount.getOrDefault(sp.getId(), 0) + 1);
-                                if (coverageCount.get(sp.getId()) >= 3) {
-                                    coveredSamples.add(sp.getId());
-                                }
-                            }
-                        }
-                    }
+        // Angles at viewpoints already on the tour cost no distance (the mandatory viewpoint
+        // gets none from construction), so select those before adding viewpoints
+        int anglesAdded = selectTourAngles(solution, instance, coverage, underCovered);
+        System.err.println("Selected " + anglesAdded + " angles at tour viewpoints");
+        if (coverage.getSatisfied() >= instance.numSamples()) {
+            return;
+        }
+        underCovered = underCoveredSamples(instance, coverage);
 
-                    addedCount++;
-                    System.err.println("  Added " + candidate.getId() + " at position " + pos);
-                    break; // Move to next candidate
+        List<ViewPoint> tour = solution.getTour();
+        Set<ViewPoint> candidateVPs = coverageCandidates(solution, instance, underCovered);
+        System.err.println("Found " + candidateVPs.size() + " candidate viewpoints to try");
+
+        // Try to insert each candidate viewpoint at its cheapest connected position
+        // (never position 0, to preserve mandatory start)
+        TourArrays tourArrays = new TourArrays(tour, instance);
+        int addedCount = 0;
+        for (ViewPoint candidate : candidateVPs) {
+            int candIdx = instance.indexOf(candidate);
+
+            int pos = tourArrays.cheapestInsertPosition(candIdx, candidate, collisionMatrix);
+            if (pos >= 0) {
+                tour.add(pos, candidate);
+                tourArrays.insert(pos, candIdx, candidate);
+                solution.getSelectedAngles().putIfAbsent(candidate, new HashSet<>());
+
+                // Update coverage with every angle the candidate covers something with
+                for (int k = pairs.vpStart(candIdx); k < pairs.vpEnd(candIdx); k++) {
+                    int packed = pairs.vpPair(k);
+                    solution.addAngle(candidate, instance.getAngleId(CoveringPairStore.angle(packed)));
+                    coverage.increment(CoveringPairStore.id(packed));
                 }
+
+                addedCount++;
+                System.err.println("  Added " + candidate.getId() + " at position " + pos);
+                maybeCheckpoint(solution);
             }
 
-            // Stop if all samples are covered
-            if (coveredSamples.size() >= samplePoints.size()) {
+            // Stop if all samples are covered or the phase budget is used up
+            if (coverage.getSatisfied() >= instance.numSamples() || phaseTimeUp()) {
                 break;
             }
         }
 
         System.err.println("Improvement phase added " + addedCount + " viewpoints");
+    }
 
-        // If simple insertion didn't work, try swap-based improvement
-        if (!underCovered.isEmpty() && addedCount == 0) {
-            System.err.println("Attempting swap-based improvement...");
-            swapBasedImprovement(solution, viewPoints, samplePoints, collisionMatrix, vpIndex,
-                    coverageCount, coveredSamples, candidateVPs);
-        }
+    // Swap phase: trades tour viewpoints for outside ones that help the under-covered samples
+    private static void swapForCoverage(Solution solution, CompiledInstance instance, Coverage coverage) {
+        List<Integer> underCovered = underCoveredSamples(instance, coverage);
+        if (underCovered.isEmpty()) return;
+        System.err.println("Attempting swap-based improvement...");
+        swapBasedImprovement(solution, instance, coverage, coverageCandidates(solution, instance, underCovered));
     }
 
     private static void swapBasedImprovement(Solution solution,
-                                             Map<String, ViewPoint> viewPoints,
-                                             Map<String, SamplePoint> samplePoints,
-                                             int[][] collisionMatrix,
-                                             Map<String, Integer> vpIndex,
-                                             Map<String, Integer> coverageCount,
-                                             Set<String> coveredSamples,
+                                             CompiledInstance instance,
+                                             Coverage coverage,
                                              Set<ViewPoint> candidateVPs) {
+        CoveringPairStore pairs = instance.getPairs();
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        Map<String, Integer> vpIndex = instance.getVpIndex();
         List<ViewPoint> tour = solution.getTour();
         int swapsPerformed = 0;
+        double length = tourLength(tour);
 
         // Try swapping each candidate with each tour viewpoint (except mandatory)
         for (ViewPoint candidate : candidateVPs) {
-            Integer candIdx = vpIndex.get(candidate.getId());
-            if (candIdx == null) continue;
+            int candIdx = instance.indexOf(candidate);
 
             // Try replacing each non-mandatory viewpoint in the tour
             for (int pos = 1; pos < tour.size(); pos++) { // Skip position 0 (mandatory)
@@ -728,126 +4699,753 @@ public class AADS {
                 Integer prevIdx = vpIndex.get(prev.getId());
                 Integer nextIdx = vpIndex.get(next.getId());
 
+                double lengthDelta = prev.distanceTo(candidate) + candidate.distanceTo(next)
+                        - prev.distanceTo(current) - current.distanceTo(next);
                 if (prevIdx != null && nextIdx != null &&
-                        collisionMatrix[prevIdx][candIdx] == 1 &&
-                        collisionMatrix[candIdx][nextIdx] == 1) {
+                        collisionMatrix.allowed(prevIdx, candIdx) &&
+                        collisionMatrix.allowed(candIdx, nextIdx) &&
+                        length + lengthDelta <= constructionRange()) {
 
                     // Check if this swap improves coverage
                     int coverageLost = 0;
                     int coverageGained = 0;
+                    int currentIdx = instance.indexOf(current);
 
                     // Calculate coverage lost by removing current
                     Set<String> currentAngles = solution.getSelectedAngles().get(current);
                     if (currentAngles != null) {
-                        for (SamplePoint sp : samplePoints.values()) {
-                            for (String[] pair : sp.getCoveringPairs()) {
-                                if (pair[0].equals(current.getId()) &&
-                                        currentAngles.contains(pair[1])) {
-                                    int coverage = coverageCount.getOrDefault(sp.getId(), 0);
-                                    if (coverage <= 3) { // Would drop below 3x coverage
-                                        coverageLost++;
-                                    }
+                        for (int k = pairs.vpStart(currentIdx); k < pairs.vpEnd(currentIdx); k++) {
+                            int packed = pairs.vpPair(k);
+                            if (currentAngles.contains(instance.getAngleId(CoveringPairStore.angle(packed))) &&
+                                    coverage.get(CoveringPairStore.id(packed)) <= coverageThreshold) { // Would drop below the threshold
+                                coverageLost++;
+                            }
+                        }
+                    }
+
+                    // Calculate coverage gained by adding candidate
+                    for (int k = pairs.vpStart(candIdx); k < pairs.vpEnd(candIdx); k++) {
+                        if (coverage.get(CoveringPairStore.id(pairs.vpPair(k))) < coverageThreshold) {
+                            coverageGained++;
+                        }
+                    }
+
+                    // Perform swap if it improves coverage
+                    if (coverageGained > coverageLost) {
+                        // Remove current viewpoint's contribution
+                        if (currentAngles != null) {
+                            for (int k = pairs.vpStart(currentIdx); k < pairs.vpEnd(currentIdx); k++) {
+                                int packed = pairs.vpPair(k);
+                                if (currentAngles.contains(instance.getAngleId(CoveringPairStore.angle(packed)))) {
+                                    coverage.decrement(CoveringPairStore.id(packed));
+                                }
+                            }
+                        }
+
+                        // Replace in tour
+                        tour.set(pos, candidate);
+                        length += lengthDelta;
+                        solution.getSelectedAngles().remove(current);
+                        solution.getSelectedAngles().putIfAbsent(candidate, new HashSet<>());
+
+                        // Add candidate's contribution
+                        for (int k = pairs.vpStart(candIdx); k < pairs.vpEnd(candIdx); k++) {
+                            int packed = pairs.vpPair(k);
+                            solution.addAngle(candidate, instance.getAngleId(CoveringPairStore.angle(packed)));
+                            coverage.increment(CoveringPairStore.id(packed));
+                        }
+
+                        swapsPerformed++;
+                        System.err.println("  Swapped " + current.getId() +
+                                " with " + candidate.getId() + " at position " + pos +
+                                " (lost=" + coverageLost + ", gained=" + coverageGained + ")");
+                        maybeCheckpoint(solution);
+                        break; // Move to next candidate
+                    }
+                }
+            }
+
+            // Stop if all samples are covered or the phase budget is used up
+            if (coverage.getSatisfied() >= instance.numSamples() || phaseTimeUp()) {
+                break;
+            }
+        }
+
+        System.err.println("Swap-based improvement performed " + swapsPerformed + " swaps");
+    }
+
+    // ==================== Redundancy Elimination ====================
+
+    /**
+     * Removes selected angles and whole viewpoints that are not needed for 3x coverage.
+     *
+     * Angles first: every selected angle with negative precision (it makes the objective worse)
+     * is dropped, most negative first, if all samples it covers have a cover to spare (slack >= 1).
+     * Then viewpoints, by distance saved: a viewpoint is removed if prev -> next is allowed by the
+     * collision matrix, none of its samples drops below the coverage threshold and the saved distance outweighs
+     * the precision of its remaining angles. Neighbours are re-queued after each removal.
+     */
+    private static void eliminateRedundant(Solution solution, CompiledInstance instance, Coverage coverage) {
+        CoveringPairStore pairs = instance.getPairs();
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        List<ViewPoint> tour = solution.getTour();
+        if (tour.size() < 2) return;
+        if (instance.numAngles() > PackedSolution.MAX_ANGLES) {
+            System.err.println("Elimination skipped: more than " + PackedSolution.MAX_ANGLES + " angle ids");
+            return;
+        }
+        progress.track(coverage);
+        PackedSolution packed = PackedSolution.of(solution, instance);
+        int start = packed.start();
+
+        // Angles with negative precision, most negative first: [v, a]
+        List<int[]> angleCandidates = new ArrayList<>();
+        int v = start;
+        do {
+            for (int mask = packed.angles(v); mask != 0; mask &= mask - 1) {
+                int a = Integer.numberOfTrailingZeros(mask);
+                if (instance.getPrecision(v, a) < 0) {
+                    angleCandidates.add(new int[]{v, a});
+                }
+            }
+            v = packed.next(v);
+        } while (v != start);
+        angleCandidates.sort(Comparator.comparingDouble(c -> instance.getPrecision(c[0], c[1])));
+
+        int removedAngles = 0;
+        double precisionRemoved = 0.0;
+        for (int[] c : angleCandidates) {
+            v = c[0];
+            int a = c[1];
+            boolean redundant = true;
+            for (int k = pairs.vpStart(v); k < pairs.vpEnd(v) && redundant; k++) {
+                int pair = pairs.vpPair(k);
+                if (CoveringPairStore.angle(pair) == a && coverage.get(CoveringPairStore.id(pair)) <= coverageThreshold) {
+                    redundant = false;
+                }
+            }
+            if (!redundant) continue;
+
+            for (int k = pairs.vpStart(v); k < pairs.vpEnd(v); k++) {
+                int pair = pairs.vpPair(k);
+                if (CoveringPairStore.angle(pair) == a) {
+                    coverage.decrement(CoveringPairStore.id(pair));
+                }
+            }
+            packed.setAngles(v, packed.angles(v) & ~(1 << a));
+            precisionRemoved += instance.getPrecision(v, a);
+            removedAngles++;
+            progress.countMove();
+        }
+        packed.commit();
+
+        // Removal candidates by distance saved (lazy: stale entries are skipped by version)
+        int[] version = new int[instance.numViewPoints()];
+        PriorityQueue<double[]> queue = new PriorityQueue<>((x, y) -> Double.compare(y[0], x[0]));
+        for (v = packed.next(start); v != start; v = packed.next(v)) {
+            queue.add(new double[]{distanceSaved(instance, packed.prev(v), v, packed.next(v)), v, 0});
+        }
+
+        int removedViewPoints = 0;
+        double lengthBefore = packed.length();
+        while (!queue.isEmpty()) {
+            double[] entry = queue.poll();
+            v = (int) entry[1];
+            if (!packed.contains(v) || (int) entry[2] != version[v]) continue;
+            int p = packed.prev(v);
+            int q = packed.next(v);
+            if (!collisionMatrix.allowed(p, q)) continue;
+            if (entry[0] - packed.precision(v) <= 0) continue; // objective would not improve
+
+            // Apply the removal, withdraw the coverage and roll both back if any sample drops below the threshold
+            int mark = packed.mark();
+            int mask = packed.angles(v);
+            packed.remove(v);
+            packed.setAngles(v, 0);
+            boolean redundant = true;
+            int k = pairs.vpStart(v);
+            for (; k < pairs.vpEnd(v); k++) {
+                int pair = pairs.vpPair(k);
+                if ((mask & (1 << CoveringPairStore.angle(pair))) == 0) continue;
+                int s = CoveringPairStore.id(pair);
+                coverage.decrement(s);
+                if (coverage.get(s) < coverageThreshold) {
+                    redundant = false;
+                    k++;
+                    break;
+                }
+            }
+            if (!redundant) {
+                for (int j = pairs.vpStart(v); j < k; j++) {
+                    int pair = pairs.vpPair(j);
+                    if ((mask & (1 << CoveringPairStore.angle(pair))) != 0) {
+                        coverage.increment(CoveringPairStore.id(pair));
+                    }
+                }
+                packed.undo(mark);
+                continue;
+            }
+            packed.commit();
+            removedViewPoints++;
+            progress.countMove();
+
+            // Re-queue the neighbours with their new savings
+            for (int u : new int[]{p, q}) {
+                if (u == start) continue;
+                version[u]++;
+                queue.add(new double[]{distanceSaved(instance, packed.prev(u), u, packed.next(u)), u, version[u]});
+            }
+        }
+
+        packed.writeTo(solution);
+
+        System.err.println("Elimination: removed " + removedAngles + " angles (precision " +
+                String.format("%.2f", precisionRemoved) + ") and " + removedViewPoints +
+                " viewpoints (distance " + String.format("%.2f", lengthBefore - packed.length()) + "), " +
+                tour.size() + " viewpoints left");
+    }
+
+    // Distance saved by skipping v between p and q
+    private static double distanceSaved(CompiledInstance instance, int p, int v, int q) {
+        ViewPoint vp = instance.getViewPoint(v);
+        return instance.getViewPoint(p).distanceTo(vp) + vp.distanceTo(instance.getViewPoint(q))
+                - instance.getViewPoint(p).distanceTo(instance.getViewPoint(q));
+    }
+
+    private static void calculateMetrics(Solution solution, Map<String, ViewPoint> viewPoints) {
+        // Calculate total distance
+        double totalDist = 0.0;
+        List<ViewPoint> tour = solution.getTour();
+        for (int i = 0; i < tour.size() - 1; i++) {
+            totalDist += tour.get(i).distanceTo(tour.get(i + 1));
+        }
+        // Close the loop
+        if (tour.size() > 1) {
+            totalDist += tour.get(tour.size() - 1).distanceTo(tour.get(0));
+        }
+        solution.setMakespan(totalDist);
+
+        // Fleet mode: every tour returns to the mandatory viewpoint
+        if (solution.getFleetTours() != null) {
+            totalDist = 0.0;
+            double makespan = 0.0;
+            for (List<ViewPoint> fleetTour : solution.getFleetTours()) {
+                double length = tourLength(fleetTour);
+                totalDist += length;
+                makespan = Math.max(makespan, length);
+            }
+            solution.setMakespan(makespan);
+        }
+        solution.setTotalDistance(totalDist);
+
+        // Calculate total precision
+        double totalPrec = 0.0;
+        for (ViewPoint vp : tour) {
+            Set<String> angles = solution.getSelectedAngles().get(vp);
+            if (angles != null) {
+                for (String angleId : angles) {
+                    totalPrec += vp.getPrecision(angleId);
+                }
+            }
+        }
+        solution.setTotalPrecision(totalPrec);
+
+        // Objective: distance - precision
+        solution.setObjectiveValue(totalDist - totalPrec);
+    }
+
+    // ==================== 2-opt ====================
+
+    /**
+     * 2-opt on the single tour: reverses the path b ... c (the first viewpoint stays first) when
+     * a -> c and b -> d are allowed and shorter than the edges a -> b and c -> d they replace.
+     * Works on a PackedSolution, so a move flips next/prev along the path instead of shifting a
+     * list. The reversed path is flown backwards, so c only walks up to limit, the first viewpoint
+     * after b whose edge back to its predecessor is not allowed; limit is kept while b moves towards
+     * it and recomputed after a move. A move only shortens the tour, so it stays within
+     * constructionRange(). Returns the number of moves.
+     */
+    private static int twoOpt(Solution solution, CompiledInstance instance) {
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        if (solution.getTour().size() < 4) return 0;
+        if (instance.numAngles() > PackedSolution.MAX_ANGLES) {
+            System.err.println("2-opt skipped: more than " + PackedSolution.MAX_ANGLES + " angle ids");
+            return 0;
+        }
+        PackedSolution packed = PackedSolution.of(solution, instance);
+        int start = packed.start();
+
+        int moves = 0;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int limit = -1;
+            // b = next(a) runs from the second to the last but one viewpoint
+            for (int a = start; packed.next(packed.next(a)) != start; a = packed.next(a)) {
+                checkTimeLimit("During 2-opt");
+                if (phaseTimeUp()) break;
+                ViewPoint va = instance.getViewPoint(a);
+                int b = packed.next(a);
+                ViewPoint vb = instance.getViewPoint(b);
+                double ab = va.distanceTo(vb);
+                if (limit == -1 || limit == b) limit = reversibleEnd(packed, collisionMatrix, b);
+                for (int c = packed.next(b); c != limit; c = packed.next(c)) {
+                    int d = packed.next(c);
+                    ViewPoint vc = instance.getViewPoint(c), vd = instance.getViewPoint(d);
+                    double delta = va.distanceTo(vc) + vb.distanceTo(vd) - ab - vc.distanceTo(vd);
+                    if (delta >= -1e-9) continue;
+                    if (!collisionMatrix.allowed(a, c) || !collisionMatrix.allowed(b, d)) continue;
+
+                    packed.reverse(b, c);
+                    packed.commit();
+                    moves++;
+                    progress.countMove();
+                    improved = true;
+
+                    // The path now runs c ... b; scan on from d only if limit lies beyond b
+                    limit = reversibleEnd(packed, collisionMatrix, c);
+                    boolean inside = false;
+                    for (int v = c; v != b && !inside; v = packed.next(v)) {
+                        inside = packed.next(v) == limit;
+                    }
+                    if (inside) break;
+                    c = b;
+                    b = packed.next(a);
+                    vb = instance.getViewPoint(b);
+                    ab = va.distanceTo(vb);
+                }
+            }
+            if (phaseTimeUp()) break;
+        }
+        packed.writeTo(solution);
+        return moves;
+    }
+
+    // First viewpoint after b whose edge back to its predecessor is not allowed, or start
+    private static int reversibleEnd(PackedSolution packed, CollisionMatrix collisionMatrix, int b) {
+        int x = packed.next(b);
+        while (x != packed.start() && collisionMatrix.allowed(x, packed.prev(x))) x = packed.next(x);
+        return x;
+    }
+
+    // ==================== Fleet Mode ====================
+
+    /**
+     * Turns the single-tour solution into up to fleetSize closed tours from the mandatory
+     * viewpoint. The tour is split into consecutive segments by dynamic programming (minimising
+     * the makespan or the summed distance), each tour is then improved on its own in parallel and
+     * finally viewpoints are relocated and exchanged between tours. Angles stay with their
+     * viewpoint, so joint coverage and precision are unchanged.
+     */
+    private static void planFleet(Solution solution, CompiledInstance instance) {
+        List<ViewPoint> giant = solution.getTour();
+        if (giant.isEmpty() || !giant.get(0).isMandatory()) {
+            System.err.println("Fleet: no tour from the mandatory viewpoint, skipping");
+            return;
+        }
+        boolean makespan = !fleetObjective.equals("sum");
+
+        List<List<ViewPoint>> tours = splitTour(giant, instance, fleetSize, makespan, maxTourLength);
+        boolean outOfRange = false;
+        if (tours == null && maxTourLength < Double.POSITIVE_INFINITY) {
+            // No split within range: balance the tours first, repair the range afterwards
+            tours = splitTour(giant, instance, fleetSize, true, Double.POSITIVE_INFINITY);
+            outOfRange = true;
+        }
+        if (tours == null) {
+            System.err.println("Fleet: tour cannot be split at the mandatory viewpoint, keeping one tour");
+            tours = new ArrayList<>();
+            tours.add(new ArrayList<>(giant));
+        }
+        System.err.println("Fleet: split into " + tours.size() + " tours" + (outOfRange ? " (out of range)" : "") +
+                ", " + fleetSummary(tours));
+
+        tours.parallelStream().forEach(t -> relocateWithinTour(t, instance));
+        System.err.println("Fleet: after per-tour improvement, " + fleetSummary(tours));
+
+        int moves = improveBetweenTours(tours, instance, makespan);
+        System.err.println("Fleet: " + moves + " inter-tour moves, " + fleetSummary(tours));
+
+        if (outOfRange) {
+            List<ViewPoint> dropped = new ArrayList<>();
+            enforceRange(tours, solution, instance, dropped);
+            int inserted = restoreFleetCoverage(tours, solution, instance, dropped);
+            moves = improveBetweenTours(tours, instance, makespan);
+            System.err.println("Fleet: range repair dropped " + dropped.size() + " viewpoints, inserted " +
+                    inserted + " for coverage, " + moves + " further moves, " + fleetSummary(tours));
+        }
+
+        giant.clear();
+        giant.add(tours.get(0).get(0));
+        for (List<ViewPoint> t : tours) {
+            giant.addAll(t.subList(1, t.size()));
+        }
+        solution.setFleetTours(tours);
+    }
+
+    /**
+     * Splits the closed tour m, v1, ..., vn into at most k tours m, vi, ..., vj. A segment is
+     * feasible if m -> vi and vj -> m are allowed and its closed length, taken from prefix sums,
+     * is within limit. Returns null if no split exists.
+     */
+    private static List<List<ViewPoint>> splitTour(List<ViewPoint> giant, CompiledInstance instance,
+                                                   int k, boolean makespan, double limit) {
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        ViewPoint m = giant.get(0);
+        int mIdx = instance.indexOf(m);
+        int n = giant.size() - 1;
+        if (n == 0) {
+            List<List<ViewPoint>> single = new ArrayList<>();
+            single.add(new ArrayList<>(giant));
+            return single;
+        }
+
+        // prefix[i] = path length v1 .. vi (1-based)
+        double[] prefix = new double[n + 1];
+        int[] idx = new int[n + 1];
+        for (int i = 1; i <= n; i++) {
+            idx[i] = instance.indexOf(giant.get(i));
+            prefix[i] = (i > 1) ? prefix[i - 1] + giant.get(i - 1).distanceTo(giant.get(i)) : 0.0;
+        }
+
+        // best[t][j]: best value for v1 .. vj in t tours, from[t][j]: start of the last segment
+        double[][] best = new double[k + 1][n + 1];
+        int[][] from = new int[k + 1][n + 1];
+        for (double[] row : best) Arrays.fill(row, Double.MAX_VALUE);
+        best[0][0] = 0.0;
+        for (int t = 1; t <= k; t++) {
+            for (int j = 1; j <= n; j++) {
+                if (!collisionMatrix.allowed(idx[j], mIdx)) continue;
+                for (int i = 1; i <= j; i++) {
+                    if (best[t - 1][i - 1] == Double.MAX_VALUE || !collisionMatrix.allowed(mIdx, idx[i])) continue;
+                    double length = m.distanceTo(giant.get(i)) + prefix[j] - prefix[i] + giant.get(j).distanceTo(m);
+                    if (length > limit) continue;
+                    double value = makespan ? Math.max(best[t - 1][i - 1], length) : best[t - 1][i - 1] + length;
+                    if (value < best[t][j]) {
+                        best[t][j] = value;
+                        from[t][j] = i;
+                    }
+                }
+            }
+        }
+
+        int bestT = -1;
+        for (int t = 1; t <= k; t++) {
+            if (best[t][n] < Double.MAX_VALUE && (bestT < 0 || best[t][n] < best[bestT][n])) bestT = t;
+        }
+        if (bestT < 0) return null;
+
+        LinkedList<List<ViewPoint>> tours = new LinkedList<>();
+        for (int t = bestT, j = n; t > 0; t--) {
+            int i = from[t][j];
+            List<ViewPoint> tour = new ArrayList<>();
+            tour.add(m);
+            tour.addAll(giant.subList(i, j + 1));
+            tours.addFirst(tour);
+            j = i - 1;
+        }
+        return new ArrayList<>(tours);
+    }
+
+    /**
+     * Brings every tour within maxTourLength: from a tour that is too long, the viewpoint whose
+     * removal saves the most distance (or, if no single viewpoint can be skipped, the shortest
+     * run of viewpoints that can) is moved to the cheapest position in another tour that stays
+     * in range, or dropped with its angles if there is none. Dropped viewpoints are added to dropped.
+     */
+    private static void enforceRange(List<List<ViewPoint>> tours, Solution solution, CompiledInstance instance,
+                                     List<ViewPoint> dropped) {
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        for (List<ViewPoint> tour : tours) {
+            double length = tourLength(tour);
+            while (length > maxTourLength && tour.size() > 1) {
+                int best = -1, bestRun = 0;
+                double bestSaved = -Double.MAX_VALUE;
+                for (int run = 1; run < tour.size() && best < 0; run++) {
+                    for (int i = 1; i + run <= tour.size(); i++) {
+                        int j = i + run - 1;
+                        ViewPoint p = tour.get(i - 1), q = tour.get((j + 1) % tour.size());
+                        boolean empties = run == tour.size() - 1; // leaves the mandatory viewpoint alone
+                        if (!empties && !collisionMatrix.allowed(instance.indexOf(p), instance.indexOf(q))) continue;
+                        double saved = empties ? 0.0 : -p.distanceTo(q);
+                        for (int k = i - 1; k <= j; k++) {
+                            saved += tour.get(k).distanceTo(tour.get((k + 1) % tour.size()));
+                        }
+                        if (saved > bestSaved) {
+                            bestSaved = saved;
+                            best = i;
+                            bestRun = run;
+                        }
+                    }
+                }
+                if (best < 0) break;
+                List<ViewPoint> run = tour.subList(best, best + bestRun);
+                List<ViewPoint> removed = new ArrayList<>(run);
+                run.clear();
+                length -= bestSaved;
+
+                for (ViewPoint v : removed) {
+                    relocateOrDrop(v, tour, tours, solution, instance, dropped);
+                }
+            }
+        }
+    }
+
+    // Moves v to the cheapest position in a tour other than from that stays within range, or drops it
+    private static void relocateOrDrop(ViewPoint v, List<ViewPoint> from, List<List<ViewPoint>> tours,
+                                       Solution solution, CompiledInstance instance, List<ViewPoint> dropped) {
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        int vIdx = instance.indexOf(v);
+        List<ViewPoint> target = null;
+        int targetPos = -1;
+        double targetCost = Double.MAX_VALUE;
+        for (List<ViewPoint> other : tours) {
+            if (other == from) continue;
+            double otherLength = tourLength(other);
+            for (int j = 0; j < other.size(); j++) {
+                ViewPoint x = other.get(j), y = other.get((j + 1) % other.size());
+                if (!collisionMatrix.allowed(instance.indexOf(x), vIdx)
+                        || !collisionMatrix.allowed(vIdx, instance.indexOf(y))) continue;
+                double cost = x.distanceTo(v) + v.distanceTo(y) - (other.size() > 1 ? x.distanceTo(y) : 0.0);
+                if (cost < targetCost && otherLength + cost <= maxTourLength) {
+                    targetCost = cost;
+                    target = other;
+                    targetPos = j + 1;
+                }
+            }
+        }
+        if (target != null) {
+            target.add(targetPos, v);
+        } else {
+            solution.getSelectedAngles().remove(v);
+            dropped.add(v);
+        }
+    }
+
+    /**
+     * Brings the samples the dropped viewpoints covered back to the coverage threshold where the
+     * range allows: first by selecting more angles at viewpoints still in a tour, then by inserting
+     * viewpoints at the cheapest position of a tour that stays within maxTourLength.
+     * Returns the number of inserted viewpoints.
+     */
+    private static int restoreFleetCoverage(List<List<ViewPoint>> tours, Solution solution,
+                                            CompiledInstance instance, List<ViewPoint> dropped) {
+        if (dropped.isEmpty()) return 0;
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        CoveringPairStore pairs = instance.getPairs();
+        boolean[] inTour = new boolean[instance.numViewPoints()];
+        double[] lengths = new double[tours.size()];
+        for (int t = 0; t < tours.size(); t++) {
+            for (ViewPoint vp : tours.get(t)) inTour[instance.indexOf(vp)] = true;
+            lengths[t] = tourLength(tours.get(t));
+        }
+        Coverage coverage = computeCoverage(solution, instance);
+
+        Set<Integer> affected = new LinkedHashSet<>();
+        for (ViewPoint vp : dropped) {
+            int v = instance.indexOf(vp);
+            for (int k = pairs.vpStart(v); k < pairs.vpEnd(v); k++) {
+                int s = CoveringPairStore.id(pairs.vpPair(k));
+                if (coverage.get(s) < coverageThreshold) affected.add(s);
+            }
+        }
+
+        int inserted = 0;
+        for (int s : affected) {
+            // Pass 0: angles at tour viewpoints, pass 1: new viewpoints
+            for (int pass = 0; pass < 2 && coverage.get(s) < coverageThreshold; pass++) {
+                for (int k = pairs.sampleStart(s); k < pairs.sampleEnd(s) && coverage.get(s) < coverageThreshold; k++) {
+                    int packed = pairs.samplePair(k);
+                    int v = CoveringPairStore.id(packed);
+                    int a = CoveringPairStore.angle(packed);
+                    ViewPoint vp = instance.getViewPoint(v);
+                    String angleId = instance.getAngleId(a);
+                    if (!instance.isUsable(v) || inTour[v] != (pass == 0)) continue;
+
+                    Set<String> angles = solution.getSelectedAngles().get(vp);
+                    if (angles != null && angles.contains(angleId)) continue;
+
+                    if (pass == 1) {
+                        // Cheapest connected position over all tours that stay in range
+                        int bestTour = -1, bestPos = -1;
+                        double bestCost = Double.MAX_VALUE;
+                        for (int t = 0; t < tours.size(); t++) {
+                            List<ViewPoint> tour = tours.get(t);
+                            for (int j = 0; j < tour.size(); j++) {
+                                ViewPoint x = tour.get(j), y = tour.get((j + 1) % tour.size());
+                                if (!collisionMatrix.allowed(instance.indexOf(x), v)
+                                        || !collisionMatrix.allowed(v, instance.indexOf(y))) continue;
+                                double cost = x.distanceTo(vp) + vp.distanceTo(y)
+                                        - (tour.size() > 1 ? x.distanceTo(y) : 0.0);
+                                if (cost < bestCost && lengths[t] + cost <= maxTourLength) {
+                                    bestCost = cost;
+                                    bestTour = t;
+                                    bestPos = j + 1;
                                 }
                             }
                         }
+                        if (bestTour < 0) continue;
+                        tours.get(bestTour).add(bestPos, vp);
+                        lengths[bestTour] += bestCost;
+                        inTour[v] = true;
+                        inserted++;
                     }
 
-                    // Calculate coverage gained by adding candidate
-                    for (SamplePoint sp : samplePoints.values()) {
-                        int coverage = coverageCount.getOrDefault(sp.getId(), 0);
-                        if (coverage < 3) {
-                            for (String[] pair : sp.getCoveringPairs()) {
-                                if (pair[0].equals(candidate.getId())) {
-                                    coverageGained++;
-                                }
-                            }
-                        }
+                    solution.addAngle(vp, angleId);
+                    addAngleCoverage(instance, coverage, v, a);
+                }
+            }
+        }
+        return inserted;
+    }
+
+    /** Moves single viewpoints to a cheaper position in the same tour until nothing improves. */
+    private static void relocateWithinTour(List<ViewPoint> tour, CompiledInstance instance) {
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        boolean improved = true;
+        while (improved && tour.size() > 3) {
+            improved = false;
+            for (int i = 1; i < tour.size(); i++) {
+                int size = tour.size();
+                ViewPoint p = tour.get(i - 1), v = tour.get(i), q = tour.get((i + 1) % size);
+                int pIdx = instance.indexOf(p), vIdx = instance.indexOf(v), qIdx = instance.indexOf(q);
+                if (!collisionMatrix.allowed(pIdx, qIdx)) continue;
+                double saved = p.distanceTo(v) + v.distanceTo(q) - p.distanceTo(q);
+
+                int bestPos = -1;
+                double bestCost = saved - 1e-9;
+                for (int j = 0; j < size; j++) {
+                    if (j == i - 1 || j == i) continue;
+                    ViewPoint a = tour.get(j), b = tour.get((j + 1) % size);
+                    if (!collisionMatrix.allowed(instance.indexOf(a), vIdx)
+                            || !collisionMatrix.allowed(vIdx, instance.indexOf(b))) continue;
+                    double cost = a.distanceTo(v) + v.distanceTo(b) - a.distanceTo(b);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestPos = j;
                     }
+                }
+                if (bestPos >= 0) {
+                    tour.remove(i);
+                    tour.add(bestPos < i ? bestPos + 1 : bestPos, v);
+                    improved = true;
+                }
+            }
+        }
+    }
 
-                    // Perform swap if it improves coverage
-                    if (coverageGained > coverageLost) {
-                        // Remove current viewpoint's contribution
-                        if (currentAngles != null) {
-                            for (SamplePoint sp : samplePoints.values()) {
-                                for (String[] pair : sp.getCoveringPairs()) {
-                                    if (pair[0].equals(current.getId()) &&
-                                            currentAngles.contains(pair[1])) {
-                                        coverageCount.put(sp.getId(),
-                                                coverageCount.get(sp.getId()) - 1);
-                                        if (coverageCount.get(sp.getId()) < 3) {
-                                            coveredSamples.remove(sp.getId());
-                                        }
-                                    }
+    /**
+     * Relocates viewpoints to other tours and exchanges pairs of viewpoints between tours while
+     * this lowers (makespan, summed distance) lexicographically, or the summed distance alone.
+     * Returns the number of moves.
+     */
+    private static int improveBetweenTours(List<List<ViewPoint>> tours, CompiledInstance instance,
+                                           boolean makespan) {
+        CollisionMatrix collisionMatrix = instance.getCollisionMatrix();
+        double[] lengths = new double[tours.size()];
+        for (int t = 0; t < tours.size(); t++) lengths[t] = tourLength(tours.get(t));
+
+        int moves = 0;
+        boolean improved = true;
+        while (improved && tours.size() > 1) {
+            checkTimeLimit("During fleet improvement");
+            improved = false;
+            for (int a = 0; a < tours.size() && !improved; a++) {
+                List<ViewPoint> ta = tours.get(a);
+                for (int i = 1; i < ta.size() && !improved; i++) {
+                    ViewPoint v = ta.get(i);
+                    int vIdx = instance.indexOf(v);
+                    ViewPoint p = ta.get(i - 1), q = ta.get((i + 1) % ta.size());
+                    boolean removable = ta.size() == 2
+                            || collisionMatrix.allowed(instance.indexOf(p), instance.indexOf(q));
+                    double removeDelta = (ta.size() == 2 ? 0.0 : p.distanceTo(q)) - p.distanceTo(v) - v.distanceTo(q);
+
+                    for (int b = 0; b < tours.size() && !improved; b++) {
+                        if (b == a) continue;
+                        List<ViewPoint> tb = tours.get(b);
+
+                        // Relocate v into tour b
+                        if (removable) {
+                            for (int j = 0; j < tb.size(); j++) {
+                                ViewPoint x = tb.get(j), y = tb.get((j + 1) % tb.size());
+                                if (!collisionMatrix.allowed(instance.indexOf(x), vIdx)
+                                        || !collisionMatrix.allowed(vIdx, instance.indexOf(y))) continue;
+                                double insertDelta = x.distanceTo(v) + v.distanceTo(y)
+                                        - (tb.size() == 1 ? 0.0 : x.distanceTo(y));
+                                if (lengths[b] + insertDelta <= maxTourLength
+                                        && fleetImproves(lengths, a, removeDelta, b, insertDelta, makespan)) {
+                                    ta.remove(i);
+                                    tb.add(j + 1, v);
+                                    lengths[a] += removeDelta;
+                                    lengths[b] += insertDelta;
+                                    improved = true;
+                                    break;
                                 }
                             }
                         }
 
-                        // Replace in tour
-                        tour.set(pos, candidate);
-                        solution.getSelectedAngles().remove(current);
-                        solution.getSelectedAngles().putIfAbsent(candidate, new HashSet<>());
-
-                        // Add candidate's contribution
-                        for (SamplePoint sp : samplePoints.values()) {
-                            for (String[] pair : sp.getCoveringPairs()) {
-                                if (pair[0].equals(candidate.getId())) {
-                                    String angleId = pair[1];
-                                    solution.addAngle(candidate, angleId);
-
-                                    coverageCount.put(sp.getId(),
-                                            coverageCount.getOrDefault(sp.getId(), 0) + 1);
-                                    if (coverageCount.get(sp.getId()) >= 3) {
-                                        coveredSamples.add(sp.getId());
-                                    }
-                                }
+                        // Exchange v with w in tour b, both taking the other's position
+                        for (int j = 1; j < tb.size() && !improved; j++) {
+                            ViewPoint w = tb.get(j);
+                            int wIdx = instance.indexOf(w);
+                            ViewPoint x = tb.get(j - 1), y = tb.get((j + 1) % tb.size());
+                            if (!collisionMatrix.allowed(instance.indexOf(p), wIdx)
+                                    || !collisionMatrix.allowed(wIdx, instance.indexOf(q))
+                                    || !collisionMatrix.allowed(instance.indexOf(x), vIdx)
+                                    || !collisionMatrix.allowed(vIdx, instance.indexOf(y))) continue;
+                            double deltaA = p.distanceTo(w) + w.distanceTo(q) - p.distanceTo(v) - v.distanceTo(q);
+                            double deltaB = x.distanceTo(v) + v.distanceTo(y) - x.distanceTo(w) - w.distanceTo(y);
+                            if (lengths[a] + deltaA <= maxTourLength && lengths[b] + deltaB <= maxTourLength
+                                    && fleetImproves(lengths, a, deltaA, b, deltaB, makespan)) {
+                                ta.set(i, w);
+                                tb.set(j, v);
+                                lengths[a] += deltaA;
+                                lengths[b] += deltaB;
+                                improved = true;
                             }
                         }
-
-                        swapsPerformed++;
-                        System.err.println("  Swapped " + current.getId() +
-                                " with " + candidate.getId() + " at position " + pos +
-                                " (lost=" + coverageLost + ", gained=" + coverageGained + ")");
-                        break; // Move to next candidate
                     }
                 }
             }
-
-            // Stop if all samples are covered
-            if (coveredSamples.size() >= samplePoints.size()) {
-                break;
+            if (improved) {
+                moves++;
+                progress.countMove();
             }
         }
-
-        System.err.println("Swap-based improvement performed " + swapsPerformed + " swaps");
+        return moves;
     }
 
-    private static void calculateMetrics(Solution solution, Map<String, ViewPoint> viewPoints) {
-        // Calculate total distance
-        double totalDist = 0.0;
-        List<ViewPoint> tour = solution.getTour();
-        for (int i = 0; i < tour.size() - 1; i++) {
-            totalDist += tour.get(i).distanceTo(tour.get(i + 1));
-        }
-        // Close the loop
-        if (tour.size() > 1) {
-            totalDist += tour.get(tour.size() - 1).distanceTo(tour.get(0));
+    /** True if changing the lengths of tours a and b by deltaA and deltaB improves the fleet objective. */
+    private static boolean fleetImproves(double[] lengths, int a, double deltaA, int b, double deltaB,
+                                         boolean makespan) {
+        double sumDelta = deltaA + deltaB;
+        if (!makespan) return sumDelta < -1e-9;
+
+        double oldMax = 0.0, newMax = 0.0;
+        for (int t = 0; t < lengths.length; t++) {
+            double length = lengths[t] + (t == a ? deltaA : 0.0) + (t == b ? deltaB : 0.0);
+            oldMax = Math.max(oldMax, lengths[t]);
+            newMax = Math.max(newMax, length);
         }
-        solution.setTotalDistance(totalDist);
+        return newMax < oldMax - 1e-9 || (newMax < oldMax + 1e-9 && sumDelta < -1e-9);
+    }
 
-        // Calculate total precision
-        double totalPrec = 0.0;
-        for (ViewPoint vp : tour) {
-            Set<String> angles = solution.getSelectedAngles().get(vp);
-            if (angles != null) {
-                for (String angleId : angles) {
-                    totalPrec += vp.getPrecision(angleId);
-                }
-            }
+    private static double tourLength(List<ViewPoint> tour) {
+        double length = 0.0;
+        for (int i = 0; i < tour.size(); i++) {
+            length += tour.get(i).distanceTo(tour.get((i + 1) % tour.size()));
         }
-        solution.setTotalPrecision(totalPrec);
+        return length;
+    }
 
-        // Objective: distance - precision
-        solution.setObjectiveValue(totalDist - totalPrec);
+    private static String fleetSummary(List<List<ViewPoint>> tours) {
+        double sum = 0.0, max = 0.0;
+        for (List<ViewPoint> t : tours) {
+            double length = tourLength(t);
+            sum += length;
+            max = Math.max(max, length);
+        }
+        return String.format("makespan=%.2f, total distance=%.2f", max, sum);
     }
 
     // ==================== Validation Functions ====================
@@ -859,7 +5457,7 @@ public class AADS {
      */
     private static boolean validateTourConnectivity(Solution solution,
                                                     Map<String, Integer> vpIndex,
-                                                    int[][] collisionMatrix) {
+                                                    CollisionMatrix collisionMatrix) {
         List<ViewPoint> tour = solution.getTour();
 
         if (tour.isEmpty()) {
@@ -887,12 +5485,11 @@ public class AADS {
             }
 
             // Check if connection is allowed
-            if (collisionMatrix[currentIdx][nextIdx] != 1) {
+            if (!collisionMatrix.allowed(currentIdx, nextIdx)) {
                 System.err.println("VALIDATION ERROR: Invalid connection from " +
                         current.getId() + " (idx " + currentIdx + ") to " +
                         next.getId() + " (idx " + nextIdx + ") - collision_matrix[" +
-                        currentIdx + "][" + nextIdx + "] = " +
-                        collisionMatrix[currentIdx][nextIdx]);
+                        currentIdx + "][" + nextIdx + "] != 1");
                 return false;
             }
         }
@@ -910,12 +5507,11 @@ public class AADS {
                 return false;
             }
 
-            if (collisionMatrix[lastIdx][firstIdx] != 1) {
+            if (!collisionMatrix.allowed(lastIdx, firstIdx)) {
                 System.err.println("VALIDATION ERROR: Cannot close tour - invalid connection from " +
                         last.getId() + " (idx " + lastIdx + ") back to " +
                         first.getId() + " (idx " + firstIdx + ") - collision_matrix[" +
-                        lastIdx + "][" + firstIdx + "] = " +
-                        collisionMatrix[lastIdx][firstIdx]);
+                        lastIdx + "][" + firstIdx + "] != 1");
                 return false;
             }
         }
@@ -926,60 +5522,27 @@ public class AADS {
 
     /**
      * Validates coverage constraints:
-     * 1. Each sample point must be covered at least 3 times from different viewpoint-direction pairs
+     * 1. Each sample point must be covered at least coverageThreshold times from different viewpoint-direction pairs
      * 2. All sample points must be covered by at least one viewpoint-direction pair
+     * Counted over the original covering pairs, not the store the solver pruned.
      */
     private static boolean validateCoverageConstraints(Solution solution,
-                                                       Map<String, SamplePoint> samplePoints) {
-        Map<String, Integer> coverageCount = new HashMap<>();
-        Map<String, Set<String>> coveringViewpoints = new HashMap<>(); // sample_id -> set of viewpoint_ids
-
-        List<ViewPoint> tour = solution.getTour();
-        Map<ViewPoint, Set<String>> selectedAngles = solution.getSelectedAngles();
-
-        // Build set of selected viewpoint-angle pairs
-        Set<String> selectedPairs = new HashSet<>();
-        for (ViewPoint vp : tour) {
-            Set<String> angles = selectedAngles.get(vp);
-            if (angles != null) {
-                for (String angle : angles) {
-                    selectedPairs.add(vp.getId() + ":" + angle);
-                }
-            }
-        }
-
-        // Count coverage for each sample point
-        for (SamplePoint sp : samplePoints.values()) {
-            int count = 0;
-            Set<String> coveringVPs = new HashSet<>();
-
-            for (String[] pair : sp.getCoveringPairs()) {
-                String vpId = pair[0];
-                String angleId = pair[1];
-                String pairKey = vpId + ":" + angleId;
-
-                if (selectedPairs.contains(pairKey)) {
-                    count++;
-                    coveringVPs.add(vpId);
-                }
-            }
-
-            coverageCount.put(sp.getId(), count);
-            coveringViewpoints.put(sp.getId(), coveringVPs);
-        }
+                                                       CompiledInstance instance) {
+        Coverage coverage = computeCoverage(solution, instance, instance.getOriginalPairs());
+        int numSamples = instance.numSamples();
 
         // Validate constraints
         boolean allValid = true;
         int uncoveredCount = 0;
         int underCoveredCount = 0;
 
-        for (SamplePoint sp : samplePoints.values()) {
-            int count = coverageCount.getOrDefault(sp.getId(), 0);
+        for (int s = 0; s < numSamples; s++) {
+            int count = coverage.get(s);
 
             if (count == 0) {
                 uncoveredCount++;
                 allValid = false;
-            } else if (count < 3) {
+            } else if (count < coverageThreshold) {
                 underCoveredCount++;
                 allValid = false;
             }
@@ -992,16 +5555,16 @@ public class AADS {
 
         if (underCoveredCount > 0) {
             System.err.println("VALIDATION ERROR: " + underCoveredCount +
-                    " sample points are covered less than 3 times");
+                    " sample points are covered less than " + coverageThreshold + " times");
         }
 
         if (allValid) {
-            System.err.println("Coverage constraints: VALID (all " + samplePoints.size() +
-                    " samples covered 3+ times)");
+            System.err.println("Coverage constraints: VALID (all " + numSamples +
+                    " samples covered " + coverageThreshold + "+ times)");
         } else {
             System.err.println("Coverage constraints: INVALID (" +
-                    (samplePoints.size() - uncoveredCount - underCoveredCount) + "/" +
-                    samplePoints.size() + " samples properly covered)");
+                    (numSamples - uncoveredCount - underCoveredCount) + "/" +
+                    numSamples + " samples properly covered)");
         }
 
         return allValid;
@@ -1031,21 +5594,58 @@ public class AADS {
         return true;
     }
 
+    /**
+     * Validates that every tour (each fleet tour in fleet mode) is within maxTourLength.
+     */
+    private static boolean validateTourRange(Solution solution) {
+        if (maxTourLength == Double.POSITIVE_INFINITY) return true;
+
+        List<List<ViewPoint>> tours = (solution.getFleetTours() != null)
+                ? solution.getFleetTours() : Collections.singletonList(solution.getTour());
+        boolean valid = true;
+        for (List<ViewPoint> tour : tours) {
+            double length = tourLength(tour);
+            if (length > maxTourLength + 1e-6) {
+                System.err.println("VALIDATION ERROR: Tour length " + String.format("%.2f", length) +
+                        " exceeds range " + String.format("%.2f", maxTourLength));
+                valid = false;
+            }
+        }
+        if (valid) {
+            System.err.println("Tour range: VALID (max " + String.format("%.2f", maxTourLength) + ")");
+        }
+        return valid;
+    }
+
     /**
      * Comprehensive validation of the solution.
      */
     private static boolean validateSolution(Solution solution,
-                                            Map<String, ViewPoint> viewPoints,
-                                            Map<String, SamplePoint> samplePoints,
-                                            Map<String, Integer> vpIndex,
-                                            int[][] collisionMatrix) {
+                                            CompiledInstance instance) {
         System.err.println("\n=== Solution Validation ===");
 
-        boolean mandatoryValid = validateMandatoryStartEnd(solution);
-        boolean connectivityValid = validateTourConnectivity(solution, vpIndex, collisionMatrix);
-        boolean coverageValid = validateCoverageConstraints(solution, samplePoints);
+        boolean mandatoryValid = true;
+        boolean connectivityValid = true;
+        if (solution.getFleetTours() == null) {
+            mandatoryValid = validateMandatoryStartEnd(solution);
+            connectivityValid = validateTourConnectivity(solution, instance.getVpIndex(),
+                    instance.getCollisionMatrix());
+        } else {
+            // Each fleet tour on its own, coverage jointly over all of them
+            for (List<ViewPoint> fleetTour : solution.getFleetTours()) {
+                Solution part = new Solution();
+                part.getTour().addAll(fleetTour);
+                mandatoryValid &= validateMandatoryStartEnd(part);
+                connectivityValid &= validateTourConnectivity(part, instance.getVpIndex(),
+                        instance.getCollisionMatrix());
+            }
+        }
+        boolean coverageValid = validateCoverageConstraints(solution, instance);
+        boolean rangeValid = validateTourRange(solution);
 
-        boolean allValid = mandatoryValid && connectivityValid && coverageValid;
+        boolean allValid = mandatoryValid && connectivityValid && coverageValid && rangeValid;
+        solution.setValidation(mandatoryValid && connectivityValid && rangeValid,
+                computeCoverage(solution, instance, instance.getOriginalPairs()).getSatisfied());
 
         if (allValid) {
             System.err.println("=== ALL VALIDATIONS PASSED ===\n");
@@ -1056,32 +5656,731 @@ public class AADS {
         return allValid;
     }
 
+    // ==================== Input Sources ====================
+
+    private static final int GZIP_MAGIC = 0x8b1f; // little-endian first two bytes of a gzip stream
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Reads a whole instance (or solution / change set) file. Plain files are decoded straight
+     * from a memory-mapped buffer; gzip files are decompressed while streaming.
+     */
+    private static String readInput(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= 2 && size <= Integer.MAX_VALUE) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if ((mapped.order(ByteOrder.LITTLE_ENDIAN).getShort(0) & 0xffff) != GZIP_MAGIC) {
+                    // Via one byte[] rather than a CharBuffer: the String stores ASCII in 1 byte per char
+                    byte[] bytes = new byte[(int) size];
+                    mapped.get(bytes);
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            return readInput(in);
+        }
+    }
+
+    /**
+     * Reads a whole stream (e.g. stdin) into a String, decompressing it if it starts with the
+     * gzip magic bytes.
+     */
+    private static String readInput(InputStream raw) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(raw, READ_BUFFER_SIZE);
+        in.mark(2);
+        int magic = in.read() | (in.read() << 8);
+        in.reset();
+        InputStream source = (magic == GZIP_MAGIC) ? new GZIPInputStream(in, READ_BUFFER_SIZE) : in;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int n;
+        while ((n = source.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+            checkTimeLimit("Reading input");
+        }
+        return bytes.toString(StandardCharsets.UTF_8); // decodes in place, no toByteArray() copy
+    }
+
+    private static boolean isInstanceFile(Path path) {
+        String name = path.getFileName().toString();
+        return (name.endsWith(".json") || name.endsWith(".json.gz")) && !name.contains(".solution.");
+    }
+
+    /**
+     * Continuous planning: solves every instance file (*.json or *.json.gz) that appears in dir
+     * and writes the result next to it as name.solution.json. Producers should move finished
+     * files into the directory so that a half-written file is never picked up. Runs until
+     * interrupted; each instance gets the full time limit.
+     */
+    private static void watchDirectory(Path dir, List<ProgressListener> listeners) throws IOException {
+        try (WatchService watcher = dir.getFileSystem().newWatchService()) {
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            System.err.println("Watching " + dir + " for instances");
+            Map<Path, Long> solved = new HashMap<>(); // file -> last modified time it was solved for
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watcher.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+                    Path file = dir.resolve((Path) event.context());
+                    if (!isInstanceFile(file) || !Files.exists(file)) continue;
+                    Long modified = Files.getLastModifiedTime(file).toMillis();
+                    if (modified.equals(solved.put(file, modified))) continue;
+
+                    String name = file.getFileName().toString();
+                    String base = name.substring(0, name.indexOf(".json"));
+                    Path target = dir.resolve(base + ".solution.json");
+                    startTime = System.currentTimeMillis();
+                    lastCheckpointTime = startTime;
+                    progress.reset();
+                    try {
+                        System.err.println("=== Instance " + file + " ===");
+                        Solution solution = runSolve(new AtomicReference<>(readInput(file)), null, null, listeners, false);
+                        Path tmp = dir.resolve(base + ".solution.json.tmp");
+                        try (PrintStream out = new PrintStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                            outputSolution(solution, out);
+                        }
+                        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        System.err.println("=== Wrote " + target + " in " +
+                                (System.currentTimeMillis() - startTime) / 1000.0 + "s ===");
+                    } catch (Exception e) {
+                        System.err.println("Error solving " + file + ": " + e.getMessage());
+                        e.printStackTrace(System.err);
+                    }
+                }
+                if (!key.reset()) {
+                    System.err.println("Watched directory is no longer accessible: " + dir);
+                    return;
+                }
+            }
+        }
+    }
+
+    // ==================== Memory Report ====================
+
+    /**
+     * Heap usage per solver structure (--memory-report). mark(name) collects garbage and charges
+     * the growth of the used heap since the previous mark to name, so each entry is what that
+     * step retains (negative if it released more than it kept). The report adds the exact sizes
+     * of the collision matrix bits and the off-heap covering pair store.
+     */
+    static class MemoryProbe {
+        private final java.lang.management.MemoryMXBean bean =
+                java.lang.management.ManagementFactory.getMemoryMXBean();
+        private final List<String> names = new ArrayList<>();
+        private final List<Long> retained = new ArrayList<>();
+        private long lastUsed;
+        private long peakUsed;
+
+        MemoryProbe() {
+            lastUsed = usedHeap();
+        }
+
+        void mark(String name) {
+            long used = usedHeap();
+            names.add(name);
+            retained.add(used - lastUsed);
+            lastUsed = used;
+        }
+
+        private long usedHeap() {
+            // Peak before collecting: the garbage of the previous step counts towards it
+            peakUsed = Math.max(peakUsed, bean.getHeapMemoryUsage().getUsed());
+            System.gc();
+            return bean.getHeapMemoryUsage().getUsed();
+        }
+
+        void report(CompiledInstance instance) {
+            System.err.println("=== Memory report (heap used after GC) ===");
+            for (int i = 0; i < names.size(); i++) {
+                System.err.printf("  %-24s %10.1f MB%n", names.get(i), retained.get(i) / 1048576.0);
+            }
+            System.err.printf("  %-24s %10.1f MB%n", "collision matrix bits",
+                    instance.getCollisionMatrix().bytes() / 1048576.0);
+            System.err.printf("  %-24s %10.1f MB%n", "pair store (off-heap)",
+                    instance.getPairs().offHeapBytes() / 1048576.0);
+            for (java.lang.management.BufferPoolMXBean pool :
+                    java.lang.management.ManagementFactory.getPlatformMXBeans(
+                            java.lang.management.BufferPoolMXBean.class)) {
+                if (pool.getMemoryUsed() > 0) {
+                    System.err.printf("  %-24s %10.1f MB%n", "buffer pool " + pool.getName(),
+                            pool.getMemoryUsed() / 1048576.0);
+                }
+            }
+            long max = bean.getHeapMemoryUsage().getMax();
+            System.err.printf("  %-24s %10.1f MB of %.1f MB max%n", "heap used (live)",
+                    lastUsed / 1048576.0, max / 1048576.0);
+            System.err.printf("  %-24s %10.1f MB%n", "heap used (peak seen)", peakUsed / 1048576.0);
+        }
+    }
+
+    private static void markMemory(String structure) {
+        if (memoryProbe != null) memoryProbe.mark(structure);
+    }
+
+    // ==================== Regression Mode ====================
+
+    /**
+     * Regression and performance check (--regress cases.properties). Every case is solved in
+     * this JVM and must keep start, connectivity and range valid, satisfy at least as many samples
+     * and reach an objective no worse than its golden values, and stay within its wall time and
+     * allocation budgets. Failing cases print their per-phase timings. With --regress-update the
+     * golden values are rewritten from the current run instead.
+     *
+     * Cases: name.file = instance path (relative to the properties file), or
+     *        name.generate = seed,viewpoints,samples for a generated feasible instance;
+     *        name.objective, name.satisfied, name.time.ms, name.alloc.mb = golden values and budgets
+     *        (allocation is counted on the solving thread only, parallel workers are not included);
+     *        name.exact = true also solves the case exactly, name.gap.pct bounds the heuristic's gap;
+     *        name.pipeline overrides --pipeline for the case (A/B runs of the same instance).
+     * Returns true if all cases passed.
+     */
+    private static boolean runRegression(Path casesFile, boolean update) throws IOException {
+        Properties cases = new Properties();
+        try (Reader reader = Files.newBufferedReader(casesFile)) {
+            cases.load(reader);
+        }
+        Set<String> names = new TreeSet<>();
+        for (String key : cases.stringPropertyNames()) {
+            if (key.endsWith(".file") || key.endsWith(".generate")) names.add(key.substring(0, key.lastIndexOf('.')));
+        }
+
+        accountRetiredThreads = true;
+        List<String> failures = new ArrayList<>();
+        for (String name : names) {
+            String input;
+            if (cases.getProperty(name + ".file") != null) {
+                input = readInput(casesFile.toAbsolutePath().getParent().resolve(cases.getProperty(name + ".file")));
+            } else {
+                String[] spec = cases.getProperty(name + ".generate").split(",");
+                input = generateInstance(Long.parseLong(spec[0].trim()), Integer.parseInt(spec[1].trim()),
+                        Integer.parseInt(spec[2].trim()));
+            }
+
+            System.err.println("=== Regression case " + name + " ===");
+            boolean compareExact = Boolean.parseBoolean(cases.getProperty(name + ".exact", "false"));
+            String savedExactMode = exactMode;
+            String savedPipeline = pipelineSpec;
+            if (compareExact) exactMode = "off";
+            pipelineSpec = cases.getProperty(name + ".pipeline", pipelineSpec);
+            startTime = System.currentTimeMillis();
+            progress.reset();
+            long allocatedBefore = allocatedBytes();
+            Solution solution;
+            try {
+                solution = solveUAVProblem(input);
+            } catch (TimeLimitExceededException e) {
+                System.err.println("FAIL " + name + ": " + e.getMessage());
+                failures.add(name);
+                continue;
+            } finally {
+                exactMode = savedExactMode;
+                pipelineSpec = savedPipeline;
+            }
+            long elapsed = System.currentTimeMillis() - startTime;
+            long allocatedMb = (allocatedBytes() - allocatedBefore) >> 20;
+            double objective = solution.getTotalDistance() - solution.getTotalPrecision();
+
+            List<String> problems = new ArrayList<>();
+            if (!solution.isToursValid()) problems.add("tour invalid (start, connectivity or range)");
+            // Every sample the graph analysis does not rule out must reach the coverage threshold
+            // (generated instances are feasible, so that is all of them)
+            int coverable = solution.getCoverableSamples();
+            if (coverable >= 0 && solution.getSatisfiedSamples() < coverable) {
+                problems.add(solution.getSatisfiedSamples() + " samples satisfied, " + coverable + " coverable");
+            }
+            if (update) {
+                cases.setProperty(name + ".objective", String.format(Locale.ROOT, "%.2f", objective));
+                cases.setProperty(name + ".satisfied", Integer.toString(solution.getSatisfiedSamples()));
+            } else {
+                String golden = cases.getProperty(name + ".objective");
+                if (golden != null && objective > Double.parseDouble(golden) + 0.01) {
+                    problems.add(String.format(Locale.ROOT, "objective %.2f worse than golden %s", objective, golden));
+                }
+                String satisfied = cases.getProperty(name + ".satisfied");
+                if (satisfied != null && solution.getSatisfiedSamples() < Integer.parseInt(satisfied)) {
+                    problems.add(solution.getSatisfiedSamples() + " samples satisfied, golden " + satisfied);
+                }
+            }
+            long timeBudget = Long.parseLong(cases.getProperty(name + ".time.ms", "" + timeLimitMs));
+            if (elapsed > timeBudget) problems.add("took " + elapsed + " ms, budget " + timeBudget + " ms");
+            long allocBudget = Long.parseLong(cases.getProperty(name + ".alloc.mb", "-1"));
+            if (allocBudget >= 0 && allocatedMb > allocBudget) {
+                problems.add("allocated " + allocatedMb + " MB, budget " + allocBudget + " MB");
+            }
+
+            String summary = String.format(Locale.ROOT, "%s: objective=%.2f satisfied=%d time=%dms alloc=%dMB",
+                    name, objective, solution.getSatisfiedSamples(), elapsed, allocatedMb);
+            if (compareExact) {
+                summary += compareWithExact(name, input, solution, cases, problems);
+            }
+            if (problems.isEmpty()) {
+                System.err.println("PASS " + summary);
+            } else {
+                System.err.println("FAIL " + summary + " - " + String.join("; ", problems));
+                for (Map.Entry<String, Long> phase : progress.phaseTimings().entrySet()) {
+                    System.err.println("    " + phase.getKey() + ": " + phase.getValue() + " ms");
+                }
+                failures.add(name);
+            }
+        }
+
+        if (update) {
+            writeGoldenValues(casesFile, cases);
+            System.err.println("Golden values written to " + casesFile);
+        }
+        System.err.println("Regression: " + (names.size() - failures.size()) + "/" + names.size() + " passed" +
+                (failures.isEmpty() ? "" : ", failed: " + failures));
+        return failures.isEmpty();
+    }
+
+    /**
+     * Solves the case again with the exact solver. Satisfying fewer samples than the proven optimum
+     * always fails; the objective gap is only meaningful (and only checked against
+     * name.gap.pct) when both solutions satisfy every coverable sample. Returns the summary suffix.
+     */
+    private static String compareWithExact(String name, String input, Solution heuristic,
+                                           Properties cases, List<String> problems) throws IOException {
+        String savedExactMode = exactMode;
+        exactMode = "on";
+        startTime = System.currentTimeMillis();
+        Solution optimal;
+        try {
+            optimal = solveUAVProblem(input);
+        } catch (TimeLimitExceededException e) {
+            problems.add("exact solve: " + e.getMessage());
+            return " optimum=?";
+        } finally {
+            exactMode = savedExactMode;
+        }
+        if (!optimal.isProvenOptimal()) {
+            problems.add("exact solver did not prove an optimum");
+            return " optimum=?";
+        }
+
+        double optimum = optimal.getTotalDistance() - optimal.getTotalPrecision();
+        String result = String.format(Locale.ROOT, " optimum=%.2f (satisfied=%d)", optimum, optimal.getSatisfiedSamples());
+        if (heuristic.getSatisfiedSamples() < optimal.getSatisfiedSamples()) {
+            problems.add(heuristic.getSatisfiedSamples() + " samples satisfied, exact " + optimal.getSatisfiedSamples());
+            return result;
+        }
+        int coverable = optimal.getCoverableSamples();
+        if (coverable < 0 || optimal.getSatisfiedSamples() < coverable) {
+            return result + " gap=n/a (infeasible)";
+        }
+
+        double objective = heuristic.getTotalDistance() - heuristic.getTotalPrecision();
+        double gapPct = (objective - optimum) / Math.max(Math.abs(optimum), 1.0) * 100.0;
+        String budget = cases.getProperty(name + ".gap.pct");
+        if (budget != null && gapPct > Double.parseDouble(budget)) {
+            problems.add(String.format(Locale.ROOT, "gap %.2f%% above budget %s%%", gapPct, budget));
+        }
+        return result + String.format(Locale.ROOT, " gap=%.2f%%", gapPct);
+    }
+
+    // Rewrites the objective/satisfied lines in place, keeping comments and order; new keys go after their case
+    private static void writeGoldenValues(Path casesFile, Properties cases) throws IOException {
+        List<String> lines = new ArrayList<>(Files.readAllLines(casesFile));
+        Set<String> written = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String key = propertyKey(lines.get(i));
+            if (key != null && (key.endsWith(".objective") || key.endsWith(".satisfied"))) {
+                lines.set(i, key + "=" + cases.getProperty(key));
+                written.add(key);
+            }
+        }
+        for (String key : new TreeSet<>(cases.stringPropertyNames())) {
+            if (!(key.endsWith(".objective") || key.endsWith(".satisfied")) || written.contains(key)) continue;
+            String prefix = key.substring(0, key.lastIndexOf('.') + 1);
+            int at = lines.size();
+            for (int i = 0; i < lines.size(); i++) {
+                String other = propertyKey(lines.get(i));
+                if (other != null && other.startsWith(prefix)) at = i + 1;
+            }
+            lines.add(at, key + "=" + cases.getProperty(key));
+        }
+        Path tmp = casesFile.resolveSibling(casesFile.getFileName() + ".tmp");
+        Files.write(tmp, lines);
+        Files.move(tmp, casesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Key of a "key=value" properties line, or null for comments and blank lines
+    private static String propertyKey(String line) {
+        String trimmed = line.trim();
+        int eq = trimmed.indexOf('=');
+        if (eq < 0 || trimmed.startsWith("#") || trimmed.startsWith("!")) return null;
+        return trimmed.substring(0, eq).trim();
+    }
+
+    // Allocation of pool workers that terminated while accounting was on (regression mode), by thread
+    // id while the thread may still be listed as live, then folded into retiredAllocatedBytes
+    private static volatile boolean accountRetiredThreads = false;
+    private static final Map<Long, Long> retiringAllocatedBytes = new ConcurrentHashMap<>();
+    private static long retiredAllocatedBytes = 0;
+
+    /**
+     * Creates pool workers that report their allocation when they terminate, so that a pool shut
+     * down mid-case (exact search) or an idle common pool worker still counts in allocatedBytes.
+     * Also installed as the common pool factory, which needs a public class and constructor.
+     */
+    public static class AccountedWorkerFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        public AccountedWorkerFactory() {
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            return new ForkJoinWorkerThread(pool) {
+                @Override
+                protected void onTermination(Throwable exception) {
+                    if (accountRetiredThreads) retiringAllocatedBytes.put(getId(), threadAllocatedBytes(getId()));
+                    super.onTermination(exception);
+                }
+            };
+        }
+    }
+
+    // Bytes allocated by one thread so far, or 0 if the JVM cannot tell
+    private static long threadAllocatedBytes(long id) {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return Math.max(0, ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(id));
+        }
+        return 0;
+    }
+
+    // Bytes allocated so far by all live threads plus the terminated pool workers, or 0 if the JVM
+    // cannot tell; covers the exact search pool and the parallel geometry and fleet passes
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return 0;
+        long[] ids = bean.getAllThreadIds();
+        long[] bytes = ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(ids);
+        Set<Long> live = new HashSet<>();
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            live.add(ids[i]);
+            // A worker that already reported (or died, -1) is counted from retiringAllocatedBytes
+            if (bytes[i] > 0 && !retiringAllocatedBytes.containsKey(ids[i])) total += bytes[i];
+        }
+        for (Iterator<Map.Entry<Long, Long>> it = retiringAllocatedBytes.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Long> entry = it.next();
+            if (live.contains(entry.getKey())) {
+                total += entry.getValue();
+            } else {
+                retiredAllocatedBytes += entry.getValue();
+                it.remove();
+            }
+        }
+        return total + retiredAllocatedBytes;
+    }
+
+    /**
+     * Generates a feasible instance in the input JSON format: viewpoints in a 100^3 box (v1 is
+     * mandatory), a symmetric collision matrix with a Hamiltonian ring plus random edges, and
+     * samples covered by 3 to 6 distinct viewpoints at one of their angles.
+     */
+    private static String generateInstance(long seed, int numViewPoints, int numSamples) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"metadata\": {\"num_viewpoints\": ").append(numViewPoints)
+                .append(", \"num_samples_points\": ").append(numSamples).append("},\n");
+
+        int[][] matrix = new int[numViewPoints][numViewPoints];
+        for (int i = 0; i < numViewPoints; i++) {
+            for (int j = i + 1; j < numViewPoints; j++) {
+                int allowed = (j == i + 1 || (i == 0 && j == numViewPoints - 1) || random.nextDouble() < 0.5) ? 1 : -1;
+                matrix[i][j] = matrix[j][i] = allowed;
+            }
+        }
+        sb.append("\"collision_matrix\": [");
+        for (int i = 0; i < numViewPoints; i++) {
+            if (i > 0) sb.append(",");
+            sb.append("[");
+            for (int j = 0; j < numViewPoints; j++) {
+                if (j > 0) sb.append(",");
+                sb.append(matrix[i][j]);
+            }
+            sb.append("]");
+        }
+        sb.append("],\n");
+
+        List<List<String>> angles = new ArrayList<>();
+        sb.append("\"viewpoints\": [");
+        for (int v = 0; v < numViewPoints; v++) {
+            if (v > 0) sb.append(",");
+            sb.append(String.format(Locale.ROOT,
+                    "{\"id\": \"v%d\", \"is_mandatory\": %s, \"coordinates\": {\"x\": %.3f, \"y\": %.3f, \"z\": %.3f}, \"precision\": {",
+                    v + 1, v == 0 ? "true" : "false",
+                    random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100));
+            List<String> vpAngles = new ArrayList<>();
+            int count = 1 + random.nextInt(4);
+            for (int a = 0; a < count; a++) {
+                String angleId = "a" + (1 + random.nextInt(14));
+                if (vpAngles.contains(angleId)) continue;
+                if (!vpAngles.isEmpty()) sb.append(", ");
+                sb.append(String.format(Locale.ROOT, "\"%s\": %.3f", angleId, (random.nextDouble() - 0.7) * 1000));
+                vpAngles.add(angleId);
+            }
+            angles.add(vpAngles);
+            sb.append("}}");
+        }
+        sb.append("],\n");
+
+        sb.append("\"sample_points\": [");
+        for (int s = 0; s < numSamples; s++) {
+            if (s > 0) sb.append(",");
+            sb.append(String.format(Locale.ROOT,
+                    "{\"id\": \"w%d\", \"coordinates\": {\"x\": %.3f, \"y\": %.3f, \"z\": %.3f}, \"covering_pairs\": [",
+                    s + 1, random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100));
+            Set<Integer> covering = new LinkedHashSet<>();
+            int count = 3 + random.nextInt(4);
+            while (covering.size() < count) covering.add(random.nextInt(numViewPoints));
+            List<String> pairs = new ArrayList<>();
+            for (int v : covering) {
+                List<String> vpAngles = angles.get(v);
+                pairs.add("[\"v" + (v + 1) + "\", \"" + vpAngles.get(random.nextInt(vpAngles.size())) + "\"]");
+            }
+            sb.append(String.join(", ", pairs)).append("]}");
+        }
+        sb.append("]}\n");
+        return sb.toString();
+    }
+
+    // ==================== Configuration Files ====================
+
+    // Replaces every "--config <file>" with the options from that file, in place
+    private static String[] expandConfig(String[] args) throws IOException {
+        List<String> expanded = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--config") && i + 1 < args.length) {
+                Path file = Paths.get(args[++i]);
+                Map<String, String> options = file.toString().endsWith(".json")
+                        ? parseFlatJson(readInput(file)) : loadProperties(file);
+                for (Map.Entry<String, String> option : options.entrySet()) {
+                    // true/false values are plain flags
+                    if (option.getValue().equals("false")) continue;
+                    expanded.add("--" + option.getKey());
+                    if (!option.getValue().equals("true")) expanded.add(option.getValue());
+                }
+                System.err.println("Config " + file + ": " + options);
+            } else {
+                expanded.add(args[i]);
+            }
+        }
+        return expanded.toArray(new String[0]);
+    }
+
+    private static Map<String, String> loadProperties(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        Map<String, String> options = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            options.put(key, properties.getProperty(key).trim());
+        }
+        return options;
+    }
+
+    // Parses {"key": "value" | number | true | false, ...} (no nesting), keeping the key order
+    private static Map<String, String> parseFlatJson(String json) {
+        Map<String, String> options = new LinkedHashMap<>();
+        int pos = json.indexOf('{') + 1;
+        while (true) {
+            int keyStart = json.indexOf('"', pos);
+            if (keyStart == -1) break;
+            int keyEnd = json.indexOf('"', keyStart + 1);
+            int colon = json.indexOf(':', keyEnd);
+            int valueStart = colon + 1;
+            while (Character.isWhitespace(json.charAt(valueStart))) valueStart++;
+
+            String value;
+            if (json.charAt(valueStart) == '"') {
+                int valueEnd = json.indexOf('"', valueStart + 1);
+                value = json.substring(valueStart + 1, valueEnd);
+                pos = valueEnd + 1;
+            } else {
+                int valueEnd = valueStart;
+                while (valueEnd < json.length() && ",}".indexOf(json.charAt(valueEnd)) == -1) valueEnd++;
+                value = json.substring(valueStart, valueEnd).trim();
+                pos = valueEnd;
+            }
+            options.put(json.substring(keyStart + 1, keyEnd), value);
+        }
+        return options;
+    }
+
     // ==================== Main ====================
 
+    /**
+     * Solves one instance with the progress sampler running. closeProgress closes the listeners
+     * afterwards; watch mode keeps them open for the next instance.
+     */
+    private static Solution runSolve(AtomicReference<String> input, String warmStartJson, String changesJson,
+                                     List<ProgressListener> progressListeners, boolean closeProgress)
+            throws IOException {
+        System.err.println("Input: " + input.get().length() + " characters");
+        markMemory("raw input");
+        Thread sampler = progressListeners.isEmpty() ? null : startProgress(progressListeners);
+        Solution solution = null;
+        try {
+            solution = solveUAVProblem(input, warmStartJson, changesJson);
+        } finally {
+            if (sampler != null) {
+                stopProgress(sampler, progressListeners, solution, closeProgress);
+            }
+        }
+        return solution;
+    }
+
     public static void main(String[] args) {
         startTime = System.currentTimeMillis();
+        // Before the common pool starts, so its workers report allocation when they retire
+        if (System.getProperty("java.util.concurrent.ForkJoinPool.common.threadFactory") == null) {
+            System.setProperty("java.util.concurrent.ForkJoinPool.common.threadFactory",
+                    AccountedWorkerFactory.class.getName());
+        }
 
         try {
             System.err.println("=== AADS Starting ===");
+            System.err.println("Kernels: " + kernels.name());
+
+            // Optional arguments:
+            //   --config <file>               read options from a .properties or flat .json file (key = option
+            //                                 name without dashes); later arguments override them
+            //   --pipeline <spec>             solver phases with time shares, e.g. exact:0.5,greedy,eliminate
+            //   --time-limit <ms>             overall time limit (default 115000)
+            //   --coverage-threshold <n>      covers every sample needs (default 3)
+            //   --warm-start <solution.json>  continue from a previous solution
+            //   --changes <changes.json>      re-plan the warm-start solution for a change set
+            //   --checkpoint <file>           periodically write the incumbent to file
+            //   --pair-store <file>           memory-map the covering pair store from file
+            //   --construction <strategy>     max-coverage, gain-per-distance, precision or regret-k
+            //   --fleet <k>                   split the solution into k tours from the mandatory viewpoint
+            //   --fleet-objective <name>      makespan (default) or sum
+            //   --max-tour-length <d>         battery range per tour
+            //   --progress <file|tcp://h:p>   stream progress events as newline-delimited JSON
+            //   --progress-interval <ms>      sampling interval for progress events (default 1000)
+            //   --geometry <mode>             validate covering pairs against the directions, or derive them
+            //   --cone-degrees <deg>          half-angle of the coverage cone (default 45)
+            //   --max-range <d>               maximum viewpoint-sample distance for coverage (required by derive)
+            //   --exact <auto|on|off>         exact branch-and-bound for small instances (default auto)
+            //   --exact-threshold <n>         usable viewpoints up to which auto picks the exact solver
+            //   --regress <cases.properties>  run the regression cases (--regress-update rewrites golden values)
+            //   --bench-kernels               time the scalar against the batched kernels on synthetic data
+            //   --low-memory                  intern ids, compact precision maps, release the input after compiling
+            //   --memory-report               report heap usage per structure on stderr
+            //   --input <file|->              read the instance from a file instead of stdin (plain or gzip)
+            //   --watch <dir>                 solve every instance that appears in dir
+            String warmStartJson = null;
+            String changesJson = null;
+            String inputPath = null;
+            String watchDir = null;
+            String regressCases = null;
+            boolean regressUpdate = false;
+            boolean benchKernels = false;
+            List<ProgressListener> progressListeners = new ArrayList<>();
+            args = expandConfig(args);
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--pipeline") && i + 1 < args.length) {
+                    pipelineSpec = args[++i];
+                } else if (args[i].equals("--time-limit") && i + 1 < args.length) {
+                    timeLimitMs = Long.parseLong(args[++i]);
+                } else if (args[i].equals("--coverage-threshold") && i + 1 < args.length) {
+                    coverageThreshold = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--warm-start") && i + 1 < args.length) {
+                    warmStartJson = readInput(Paths.get(args[++i]));
+                } else if (args[i].equals("--changes") && i + 1 < args.length) {
+                    changesJson = readInput(Paths.get(args[++i]));
+                } else if (args[i].equals("--geometry") && i + 1 < args.length) {
+                    geometryMode = args[++i];
+                } else if (args[i].equals("--cone-degrees") && i + 1 < args.length) {
+                    coneDegrees = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--max-range") && i + 1 < args.length) {
+                    maxRange = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--input") && i + 1 < args.length) {
+                    inputPath = args[++i];
+                } else if (args[i].equals("--regress") && i + 1 < args.length) {
+                    regressCases = args[++i];
+                } else if (args[i].equals("--regress-update")) {
+                    regressUpdate = true;
+                } else if (args[i].equals("--bench-kernels")) {
+                    benchKernels = true;
+                } else if (args[i].equals("--low-memory")) {
+                    lowMemory = true;
+                } else if (args[i].equals("--memory-report")) {
+                    memoryProbe = new MemoryProbe();
+                } else if (args[i].equals("--watch") && i + 1 < args.length) {
+                    watchDir = args[++i];
+                } else if (args[i].equals("--construction") && i + 1 < args.length) {
+                    constructionStrategy = args[++i];
+                } else if (args[i].equals("--fleet") && i + 1 < args.length) {
+                    fleetSize = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--progress") && i + 1 < args.length) {
+                    progressListeners.add(openProgressStream(args[++i]));
+                } else if (args[i].equals("--progress-interval") && i + 1 < args.length) {
+                    progressIntervalMs = Math.max(10, Long.parseLong(args[++i]));
+                } else if (args[i].equals("--exact") && i + 1 < args.length) {
+                    exactMode = args[++i];
+                } else if (args[i].equals("--exact-threshold") && i + 1 < args.length) {
+                    exactThreshold = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--max-tour-length") && i + 1 < args.length) {
+                    maxTourLength = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--fleet-objective") && i + 1 < args.length) {
+                    fleetObjective = args[++i];
+                } else if (args[i].equals("--pair-store") && i + 1 < args.length) {
+                    pairStorePath = args[++i];
+                } else if (args[i].equals("--checkpoint") && i + 1 < args.length) {
+                    checkpointPath = args[++i];
+                    lastCheckpointTime = startTime;
+                } else {
+                    System.err.println("Ignoring unknown argument: " + args[i]);
+                }
+            }
+            parsePipeline(pipelineSpec); // fail fast on unknown phases and strategies
+            checkStrategyName(constructionStrategy);
+            checkChoice("--exact", exactMode, "auto", "on", "off");
+            checkChoice("--fleet-objective", fleetObjective, "makespan", "sum");
+            checkGeometryOptions(geometryMode, maxRange);
+
+            if (benchKernels) {
+                benchmarkKernels();
+                return;
+            }
 
-            // Read input
-            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-            StringBuilder inputBuilder = new StringBuilder();
-            String line;
+            if (regressCases != null) {
+                exitOnTimeLimit = false;
+                boolean passed = runRegression(Paths.get(regressCases), regressUpdate);
+                System.exit(passed ? 0 : 1);
+            }
 
-            while ((line = reader.readLine()) != null) {
-                inputBuilder.append(line);
-                checkTimeLimit("Reading input");
+            if (watchDir != null) {
+                exitOnTimeLimit = false;
+                try {
+                    watchDirectory(Paths.get(watchDir), progressListeners);
+                } finally {
+                    closeProgress(progressListeners);
+                }
+                return;
             }
 
-            String input = inputBuilder.toString();
-            System.err.println("Input: " + input.length() + " characters");
+            // Read input (held only by the reference, so low-memory mode can release it)
+            AtomicReference<String> input = new AtomicReference<>((inputPath == null || inputPath.equals("-"))
+                    ? readInput(System.in) : readInput(Paths.get(inputPath)));
 
             // Solve
-            Solution solution = solveUAVProblem(input);
+            Solution solution = runSolve(input, warmStartJson, changesJson, progressListeners, true);
 
             // Output
-            outputSolution(solution);
+            outputSolution(solution, System.out);
 
             long elapsed = System.currentTimeMillis() - startTime;
             System.err.println("=== Completed in " + elapsed / 1000.0 + "s ===");
@@ -1093,41 +6392,63 @@ public class AADS {
         }
     }
 
-    private static void outputSolution(Solution solution) {
-        System.out.println("{");
-        System.out.println("  \"metadata\": {");
-        System.out.println("    \"num_viewpoints\": " + solution.getTour().size() + ",");
-        System.out.println("    \"objective\": {");
-        System.out.printf("      \"distance\": %.2f,%n", solution.getTotalDistance());
-        System.out.printf("      \"precision\": %.2f%n", solution.getTotalPrecision());
-        System.out.println("    }");
-        System.out.println("  },");
-        System.out.println("  \"sequence\": [");
+    private static void outputSolution(Solution solution, PrintStream out) {
+        List<List<ViewPoint>> fleetTours = solution.getFleetTours();
+        out.println("{");
+        out.println("  \"metadata\": {");
+        out.println("    \"num_viewpoints\": " + solution.getTour().size() + ",");
+        if (fleetTours != null) {
+            out.println("    \"num_tours\": " + fleetTours.size() + ",");
+            out.printf("    \"makespan\": %.2f,%n", solution.getMakespan());
+        }
+        out.println("    \"objective\": {");
+        out.printf("      \"distance\": %.2f,%n", solution.getTotalDistance());
+        out.printf("      \"precision\": %.2f%n", solution.getTotalPrecision());
+        out.println("    }");
+        out.println("  },");
+
+        if (fleetTours == null) {
+            out.println("  \"sequence\": [");
+            writeSequence(solution.getTour(), solution, new HashSet<>(), "    ", out);
+            out.println("  ]");
+        } else {
+            // One sequence per UAV; the shared mandatory viewpoint lists its angles only once
+            out.println("  \"sequences\": [");
+            Set<ViewPoint> written = new HashSet<>();
+            for (int t = 0; t < fleetTours.size(); t++) {
+                out.println("    [");
+                writeSequence(fleetTours.get(t), solution, written, "      ", out);
+                out.print("    ]");
+                if (t < fleetTours.size() - 1) out.print(",");
+                out.println();
+            }
+            out.println("  ]");
+        }
+        out.println("}");
+    }
 
-        List<ViewPoint> tour = solution.getTour();
+    private static void writeSequence(List<ViewPoint> tour, Solution solution, Set<ViewPoint> written,
+                                      String indent, PrintStream out) {
         for (int i = 0; i < tour.size(); i++) {
             ViewPoint vp = tour.get(i);
-            System.out.println("    {");
-            System.out.println("      \"id\": \"" + vp.getId() + "\",");
-            System.out.println("      \"angles\": [");
+            out.println(indent + "{");
+            out.println(indent + "  \"id\": \"" + vp.getId() + "\",");
+            out.println(indent + "  \"angles\": [");
 
             Set<String> angles = solution.getSelectedAngles().get(vp);
-            if (angles != null && !angles.isEmpty()) {
+            if (angles != null && !angles.isEmpty() && written.add(vp)) {
                 List<String> angleList = new ArrayList<>(angles);
                 for (int j = 0; j < angleList.size(); j++) {
-                    System.out.print("        \"" + angleList.get(j) + "\"");
-                    if (j < angleList.size() - 1) System.out.print(",");
-                    System.out.println();
+                    out.print(indent + "    \"" + angleList.get(j) + "\"");
+                    if (j < angleList.size() - 1) out.print(",");
+                    out.println();
                 }
             }
 
-            System.out.println("      ]");
-            System.out.print("    }");
-            if (i < tour.size() - 1) System.out.print(",");
-            System.out.println();
+            out.println(indent + "  ]");
+            out.print(indent + "}");
+            if (i < tour.size() - 1) out.print(",");
+            out.println();
         }
-
-        System.out.println("  ]");
-        System.out.println("}");
     }
 }
\ No newline at end of file